@@ -0,0 +1,100 @@
+package net.roguelogix.phosphophyllite.modular.api;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Module setup cost of constructing one modular instance, walking the whole registry like tiles used to vs a cached per class plan
+ * Tiles can't be constructed outside of a running game, so this is the module part of tile construction on stand in classes
+ * The registry is sized like a modpack with a few mods registering modules, the instance gets a handful of them
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModulePlanBenchmark {
+    
+    interface M0 {}
+    interface M1 {}
+    interface M2 {}
+    interface M3 {}
+    interface M4 {}
+    interface M5 {}
+    interface M6 {}
+    interface M7 {}
+    interface M8 {}
+    interface M9 {}
+    interface M10 {}
+    interface M11 {}
+    interface M12 {}
+    interface M13 {}
+    interface M14 {}
+    interface M15 {}
+    interface M16 {}
+    interface M17 {}
+    interface M18 {}
+    interface M19 {}
+    interface M20 {}
+    interface M21 {}
+    interface M22 {}
+    interface M23 {}
+    
+    static class Target implements M2, M5, M11, M17, M23 {
+    }
+    
+    record Module(Object target) {
+    }
+    
+    private static final Class<?>[] INTERFACES = {
+            M0.class, M1.class, M2.class, M3.class, M4.class, M5.class, M6.class, M7.class,
+            M8.class, M9.class, M10.class, M11.class, M12.class, M13.class, M14.class, M15.class,
+            M16.class, M17.class, M18.class, M19.class, M20.class, M21.class, M22.class, M23.class,
+    };
+    
+    private final LinkedHashMap<Class<?>, Function<Object, Module>> registry = new LinkedHashMap<>();
+    private ModulePlanCache<Object, Module> plans;
+    private final Target target = new Target();
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        for (final var moduleInterface : INTERFACES) {
+            registry.put(moduleInterface, Module::new);
+        }
+        plans = new ModulePlanCache<>(registry);
+    }
+    
+    @Benchmark
+    public void registryWalk(Blackhole blackhole) {
+        final var modules = new Object2ObjectOpenHashMap<Class<?>, Module>();
+        final var moduleList = new ArrayList<Module>();
+        final Class<?> targetClass = target.getClass();
+        registry.forEach((moduleInterface, constructor) -> {
+            if (moduleInterface.isAssignableFrom(targetClass)) {
+                final var module = constructor.apply(target);
+                modules.put(moduleInterface, module);
+                moduleList.add(module);
+            }
+        });
+        blackhole.consume(modules);
+        blackhole.consume(moduleList);
+    }
+    
+    @Benchmark
+    public void cachedPlan(Blackhole blackhole) {
+        final var plan = plans.get(target.getClass());
+        final var moduleList = new ArrayList<Module>(plan.size());
+        for (int i = 0; i < plan.size(); i++) {
+            moduleList.add(plan.construct(i, target));
+        }
+        blackhole.consume(plan);
+        blackhole.consume(moduleList);
+    }
+}
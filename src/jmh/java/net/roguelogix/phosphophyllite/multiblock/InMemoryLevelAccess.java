@@ -0,0 +1,120 @@
+package net.roguelogix.phosphophyllite.multiblock;
+
+import cpw.mods.modlauncher.api.LamdbaExceptionUtils;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.roguelogix.phosphophyllite.util.NonnullDefault;
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+
+import javax.annotation.Nullable;
+
+/**
+ * Level access backed by chunk section palettes, for driving multiblock structural code without a server
+ * Sections that were never written read as the supplied air state, same as unloaded chunks do for a real level
+ * Needs the block state registry, so bootstrap before writing anything
+ */
+@NonnullDefault
+public class InMemoryLevelAccess implements MultiblockLevelAccess {
+    
+    private final BlockState air;
+    private final Long2ObjectOpenHashMap<PalettedContainer<BlockState>> sections = new Long2ObjectOpenHashMap<>();
+    private final Long2ObjectOpenHashMap<BlockEntity> tiles = new Long2ObjectOpenHashMap<>();
+    
+    public InMemoryLevelAccess(BlockState air) {
+        this.air = air;
+    }
+    
+    public void setBlockState(int x, int y, int z, BlockState state) {
+        final long key = SectionPos.asLong(x >> 4, y >> 4, z >> 4);
+        var section = sections.get(key);
+        if (section == null) {
+            if (state == air) {
+                return;
+            }
+            section = new PalettedContainer<>(Block.BLOCK_STATE_REGISTRY, air, PalettedContainer.Strategy.SECTION_STATES);
+            sections.put(key, section);
+        }
+        section.set(x & 15, y & 15, z & 15, state);
+    }
+    
+    public void setTile(BlockPos pos, @Nullable BlockEntity tile) {
+        if (tile == null) {
+            tiles.remove(pos.asLong());
+        } else {
+            tiles.put(pos.asLong(), tile);
+        }
+    }
+    
+    public int sectionCount() {
+        return sections.size();
+    }
+    
+    @Nullable
+    @Override
+    public BlockEntity getTile(BlockPos pos) {
+        return tiles.get(pos.asLong());
+    }
+    
+    @Override
+    public BlockState getBlockState(BlockPos pos) {
+        final var section = section(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4);
+        if (section == null) {
+            return air;
+        }
+        return section.get(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15);
+    }
+    
+    @Override
+    public <T extends Exception> void forEachBlockState(Vector3ic min, Vector3ic max, LamdbaExceptionUtils.BiConsumer_WithExceptions<BlockState, Vector3i, T> consumer) throws T {
+        final var scratchVector = new Vector3i();
+        for (int sectionZ = min.z() >> 4; sectionZ <= max.z() >> 4; sectionZ++) {
+            final int minZ = Math.max(sectionZ << 4, min.z());
+            final int maxZ = Math.min((sectionZ << 4) + 15, max.z());
+            for (int sectionX = min.x() >> 4; sectionX <= max.x() >> 4; sectionX++) {
+                final int minX = Math.max(sectionX << 4, min.x());
+                final int maxX = Math.min((sectionX << 4) + 15, max.x());
+                for (int sectionY = min.y() >> 4; sectionY <= max.y() >> 4; sectionY++) {
+                    final int minY = Math.max(sectionY << 4, min.y());
+                    final int maxY = Math.min((sectionY << 4) + 15, max.y());
+                    final var section = section(sectionX, sectionY, sectionZ);
+                    for (int x = minX; x <= maxX; x++) {
+                        for (int y = minY; y <= maxY; y++) {
+                            for (int z = minZ; z <= maxZ; z++) {
+                                scratchVector.set(x, y, z);
+                                consumer.accept(section == null ? air : section.get(x & 15, y & 15, z & 15), scratchVector);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    @Nullable
+    @Override
+    public PalettedContainer<BlockState> copySection(int sectionX, int sectionY, int sectionZ) {
+        final var states = section(sectionX, sectionY, sectionZ);
+        return states == null ? null : states.copy();
+    }
+    
+    @Nullable
+    @Override
+    public PalettedContainer<BlockState> section(int sectionX, int sectionY, int sectionZ) {
+        return sections.get(SectionPos.asLong(sectionX, sectionY, sectionZ));
+    }
+    
+    @Override
+    public void setBlockStates(Long2ObjectMap<BlockState> newStates) {
+        for (final var entry : newStates.long2ObjectEntrySet()) {
+            final long pos = entry.getLongKey();
+            setBlockState(BlockPos.getX(pos), BlockPos.getY(pos), BlockPos.getZ(pos), entry.getValue());
+        }
+    }
+}
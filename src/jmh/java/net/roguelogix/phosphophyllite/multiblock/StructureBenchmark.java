@@ -0,0 +1,201 @@
+package net.roguelogix.phosphophyllite.multiblock;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Structural cost of a solid cube multiblock, per single attach, detach, split and merge, through the controller's {@link PartLayout}
+ * Attach and detach are of one block on the top face of an otherwise complete cube, cycling across that face
+ * Split breaks the only bridge between two halves and moves the smaller half out, the cube is rebuilt for every shot
+ * Ring split breaks a one block thick square ring in two places close together, splitting a short arc off of a long one
+ * Merge joins the bottom and top halves of the cube, as when a chunk of it loads next to the rest, both halves are rebuilt for every shot
+ * Validation is in rectangular.RectangularWalkBenchmark
+ * The cube is offset so it straddles section boundaries on every axis
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StructureBenchmark {
+    
+    private static final int OFFSET_X = -1000007;
+    private static final int OFFSET_Y = 57;
+    private static final int OFFSET_Z = 300005;
+    
+    private static StructureSimulation cube(int edge) {
+        final var structure = new StructureSimulation();
+        for (int y = 0; y < edge; y++) {
+            for (int z = 0; z < edge; z++) {
+                for (int x = 0; x < edge; x++) {
+                    structure.attach(OFFSET_X + x, OFFSET_Y + y, OFFSET_Z + z);
+                }
+            }
+        }
+        return structure;
+    }
+    
+    @State(Scope.Thread)
+    public static class FaceState {
+        
+        // 10^3, 32^3, 100^3, so ~1k, ~32k, and 1M blocks
+        @Param({"10", "32", "100"})
+        public int edge;
+        
+        StructureSimulation structure;
+        private int next = 0;
+        int x;
+        int y;
+        int z;
+        
+        @Setup(Level.Trial)
+        public void setup() {
+            structure = cube(edge);
+        }
+        
+        void nextFacePosition() {
+            x = OFFSET_X + next % edge;
+            y = OFFSET_Y + edge - 1;
+            z = OFFSET_Z + next / edge;
+            next = (next + 1) % (edge * edge);
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class AttachState extends FaceState {
+        @Setup(Level.Invocation)
+        public void makeRoom() {
+            nextFacePosition();
+            structure.detach(x, y, z);
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class DetachState extends FaceState {
+        @Setup(Level.Invocation)
+        public void fillIn() {
+            nextFacePosition();
+            structure.attach(x, y, z);
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class SplitState {
+        
+        @Param({"10", "32", "100"})
+        public int edge;
+        
+        StructureSimulation structure;
+        int bridgeX;
+        int bridgeY;
+        int bridgeZ;
+        
+        @Setup(Level.Invocation)
+        public void setup() {
+            // two halves joined by one block in the middle of the plane between them, the split off half is the smaller one
+            final int splitPlane = edge / 2;
+            bridgeX = OFFSET_X + splitPlane;
+            bridgeY = OFFSET_Y + edge / 2;
+            bridgeZ = OFFSET_Z + edge / 2;
+            structure = new StructureSimulation();
+            for (int y = 0; y < edge; y++) {
+                for (int z = 0; z < edge; z++) {
+                    for (int x = 0; x < edge; x++) {
+                        if (x == splitPlane && (OFFSET_Y + y != bridgeY || OFFSET_Z + z != bridgeZ)) {
+                            continue;
+                        }
+                        structure.attach(OFFSET_X + x, OFFSET_Y + y, OFFSET_Z + z);
+                    }
+                }
+            }
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class RingState {
+        
+        // ring side length, ~36, ~1k, and ~32k blocks around
+        @Param({"10", "256", "8192"})
+        public int side;
+        
+        StructureSimulation structure;
+        
+        @Setup(Level.Invocation)
+        public void setup() {
+            structure = new StructureSimulation();
+            for (int i = 0; i < side; i++) {
+                structure.attach(OFFSET_X + i, OFFSET_Y, OFFSET_Z);
+                structure.attach(OFFSET_X + i, OFFSET_Y, OFFSET_Z + side - 1);
+                structure.attach(OFFSET_X, OFFSET_Y, OFFSET_Z + i);
+                structure.attach(OFFSET_X + side - 1, OFFSET_Y, OFFSET_Z + i);
+            }
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class MergeState {
+        
+        @Param({"10", "32", "100"})
+        public int edge;
+        
+        StructureSimulation bottom;
+        StructureSimulation top;
+        
+        @Setup(Level.Invocation)
+        public void setup() {
+            bottom = new StructureSimulation();
+            top = new StructureSimulation();
+            for (int y = 0; y < edge; y++) {
+                final var half = y < edge / 2 ? bottom : top;
+                for (int z = 0; z < edge; z++) {
+                    for (int x = 0; x < edge; x++) {
+                        half.attach(OFFSET_X + x, OFFSET_Y + y, OFFSET_Z + z);
+                    }
+                }
+            }
+        }
+    }
+    
+    @Benchmark
+    public boolean attach(AttachState state) {
+        return state.structure.attach(state.x, state.y, state.z);
+    }
+    
+    @Benchmark
+    public boolean detach(DetachState state) {
+        return state.structure.detach(state.x, state.y, state.z);
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public int split(SplitState state) {
+        state.structure.detach(state.bridgeX, state.bridgeY, state.bridgeZ);
+        return state.structure.split().size();
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public int ringSplit(RingState state) {
+        // an arc of 3 blocks out of the middle of one side
+        final int middle = OFFSET_X + state.side / 2;
+        state.structure.detach(middle - 2, OFFSET_Y, OFFSET_Z);
+        state.structure.detach(middle + 2, OFFSET_Y, OFFSET_Z);
+        return state.structure.split().size();
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public int merge(MergeState state) {
+        if (!state.top.merge(state.bottom)) {
+            throw new IllegalStateException("Halves overlap");
+        }
+        return state.top.size();
+    }
+}
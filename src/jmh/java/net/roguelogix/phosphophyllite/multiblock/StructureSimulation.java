@@ -0,0 +1,153 @@
+package net.roguelogix.phosphophyllite.multiblock;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.roguelogix.phosphophyllite.util.NonnullDefault;
+import net.roguelogix.phosphophyllite.util.SectionPositionIndex;
+import org.joml.Vector3ic;
+
+/**
+ * A multiblock's parts as bare positions, laid out by the same {@link PartLayout} a {@link MultiblockController} uses
+ * Controllers need live tiles, which need a level, so this stands in for the controller's ModuleMap, and calls the layout in the same order the controller does
+ * Every block connects to every neighbor, as if every core module's shouldConnectTo returned true
+ */
+@NonnullDefault
+public class StructureSimulation implements PartLayout.Parts {
+    
+    private final SectionPositionIndex index = new SectionPositionIndex();
+    private final LongArrayList poses = new LongArrayList();
+    private final PartLayout layout = new PartLayout();
+    
+    @Override
+    public int indexOf(int x, int y, int z) {
+        return index.get(x, y, z);
+    }
+    
+    @Override
+    public long pos(int slot) {
+        return poses.getLong(slot);
+    }
+    
+    @Override
+    public boolean connects(int slot, int neighborSlot, Direction direction) {
+        return true;
+    }
+    
+    public int size() {
+        return poses.size();
+    }
+    
+    public int componentCount() {
+        return layout.graph.componentCount();
+    }
+    
+    public Vector3ic min() {
+        return layout.min();
+    }
+    
+    public Vector3ic max() {
+        return layout.max();
+    }
+    
+    public boolean contains(int x, int y, int z) {
+        return index.get(x, y, z) != -1;
+    }
+    
+    public boolean attach(int x, int y, int z) {
+        if (contains(x, y, z)) {
+            return false;
+        }
+        final int slot = poses.size();
+        index.put(x, y, z, slot);
+        poses.add(BlockPos.asLong(x, y, z));
+        layout.attached(this, slot);
+        return true;
+    }
+    
+    public boolean detach(int x, int y, int z) {
+        final int slot = index.get(x, y, z);
+        if (slot == -1) {
+            return false;
+        }
+        removeSlot(slot);
+        layout.removeFromBounds(BlockPos.asLong(x, y, z));
+        return true;
+    }
+    
+    /**
+     * Swap-remove, same as ModuleMap
+     */
+    private void removeSlot(int slot) {
+        layout.removeSlot(slot);
+        final long pos = poses.getLong(slot);
+        index.remove(BlockPos.getX(pos), BlockPos.getY(pos), BlockPos.getZ(pos));
+        final long lastPos = poses.removeLong(poses.size() - 1);
+        if (slot != poses.size()) {
+            index.put(BlockPos.getX(lastPos), BlockPos.getY(lastPos), BlockPos.getZ(lastPos), slot);
+            poses.set(slot, lastPos);
+        }
+    }
+    
+    /**
+     * Same as the controller's detachment processing, every component but the largest is moved out into its own structure
+     *
+     * @return the split off structures, empty if still connected
+     */
+    public ObjectArrayList<StructureSimulation> split() {
+        final var splitOff = new ObjectArrayList<StructureSimulation>();
+        final var componentGraphs = new ObjectArrayList<NeighborGraph>();
+        final var componentSlots = layout.splitComponents(componentGraphs);
+        final var componentPoses = new ObjectArrayList<LongArrayList>(componentSlots.size());
+        for (final var slots : componentSlots) {
+            final var slotPoses = new LongArrayList(slots.size());
+            for (int i = 0; i < slots.size(); i++) {
+                slotPoses.add(poses.getLong(slots.getInt(i)));
+            }
+            componentPoses.add(slotPoses);
+        }
+        for (int i = 0; i < componentPoses.size(); i++) {
+            final var slotPoses = componentPoses.get(i);
+            for (int j = 0; j < slotPoses.size(); j++) {
+                final long pos = slotPoses.getLong(j);
+                layout.removeFromBounds(pos);
+                removeSlot(index.get(BlockPos.getX(pos), BlockPos.getY(pos), BlockPos.getZ(pos)));
+            }
+            final var structure = new StructureSimulation();
+            structure.append(slotPoses);
+            structure.layout.attachComponent(structure, 0, componentGraphs.get(i));
+            splitOff.add(structure);
+        }
+        return splitOff;
+    }
+    
+    /**
+     * Same as the controller's bulk merge, the other structure's positions are appended and linked across the seam, it's left empty
+     *
+     * @return false if the two overlap, nothing is merged then
+     */
+    public boolean merge(StructureSimulation other) {
+        for (int i = 0; i < other.poses.size(); i++) {
+            final long pos = other.poses.getLong(i);
+            if (contains(BlockPos.getX(pos), BlockPos.getY(pos), BlockPos.getZ(pos))) {
+                return false;
+            }
+        }
+        final int base = poses.size();
+        append(other.poses);
+        layout.merge(other.layout, this, base);
+        other.index.clear();
+        other.poses.clear();
+        other.layout.graph.clear();
+        return true;
+    }
+    
+    private void append(LongArrayList toAppend) {
+        for (int i = 0; i < toAppend.size(); i++) {
+            final long pos = toAppend.getLong(i);
+            index.put(BlockPos.getX(pos), BlockPos.getY(pos), BlockPos.getZ(pos), poses.size());
+            poses.add(pos);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package net.roguelogix.phosphophyllite.multiblock.rectangular;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.roguelogix.phosphophyllite.multiblock.InMemoryLevelAccess;
+import net.roguelogix.phosphophyllite.multiblock.ValidationException;
+import org.joml.Vector3i;
+import org.openjdk.jmh.annotations.*;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rectangular validation's block walk over a solid cube in an in memory level, iron casing on the outside and glass inside
+ * Full walks go over sections the same way the module's do, live ones when serial, copies when worker threads help
+ * Inline is the module's walk for boxes too big to cache when the controller wants a callback per block
+ * Incremental re-checks a scattering of casing positions against the cached walk, half of them swapped to gold blocks since the last one
+ * The controller's rules need blocks implementing IRectangularMultiblockBlock, which only exist in a loaded mod, so these rules count every block in the cube as a part
+ * The cube is offset so it straddles section boundaries on every axis
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RectangularWalkBenchmark {
+    
+    private static final int OFFSET_X = -1000007;
+    private static final int OFFSET_Y = 57;
+    private static final int OFFSET_Z = 300005;
+    private static final int RECHECKED_POSITIONS = 64;
+    
+    private static final class CubeRules implements RectangularWalk.Rules {
+        private final Block casing = Blocks.IRON_BLOCK;
+        private final Block port = Blocks.GOLD_BLOCK;
+        private final Block interior = Blocks.GLASS;
+        
+        @Nullable
+        @Override
+        public String rejectingRole(Block block, int extremes) {
+            if (extremes == 0) {
+                return block == interior ? null : "interior";
+            }
+            return block == casing || block == port ? null : "exterior";
+        }
+        
+        @Override
+        public boolean isPart(@Nullable Block block) {
+            return block == casing || block == port || block == interior;
+        }
+        
+        @Override
+        public void blockValidated(Block block) {
+            // same as the controller's default
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class CubeState {
+        
+        @Param({"10", "32", "100"})
+        public int edge;
+        
+        final Vector3i min = new Vector3i();
+        final Vector3i max = new Vector3i();
+        InMemoryLevelAccess level;
+        CubeRules rules;
+        RectangularWalk walk;
+        
+        @Setup(Level.Trial)
+        public void setup() throws ValidationException {
+            SharedConstants.tryDetectVersion();
+            Bootstrap.bootStrap();
+            rules = new CubeRules();
+            walk = new RectangularWalk(rules);
+            min.set(OFFSET_X, OFFSET_Y, OFFSET_Z);
+            max.set(min).add(edge - 1, edge - 1, edge - 1);
+            level = new InMemoryLevelAccess(Blocks.AIR.defaultBlockState());
+            for (int y = 0; y < edge; y++) {
+                for (int z = 0; z < edge; z++) {
+                    for (int x = 0; x < edge; x++) {
+                        final boolean exterior = x == 0 || y == 0 || z == 0 || x == edge - 1 || y == edge - 1 || z == edge - 1;
+                        level.setBlockState(OFFSET_X + x, OFFSET_Y + y, OFFSET_Z + z, (exterior ? rules.casing : rules.interior).defaultBlockState());
+                    }
+                }
+            }
+            walk.begin(min, max);
+            walk.walkSections(RectangularWalk.sections(level, min, max, false), false);
+            if (walk.foundBlocks() != edge * edge * edge) {
+                throw new IllegalStateException("Mismatched block count");
+            }
+            built();
+        }
+        
+        void built() {
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class FullState extends CubeState {
+        @Param({"false", "true"})
+        public boolean parallel;
+    }
+    
+    @State(Scope.Thread)
+    public static class IncrementalState extends CubeState {
+        
+        final LongArrayList positions = new LongArrayList();
+        private boolean swapped = false;
+        
+        @Override
+        void built() {
+            // spread evenly over the top face
+            final int faceArea = edge * edge;
+            for (int i = 0; i < RECHECKED_POSITIONS; i++) {
+                final int index = i * faceArea / RECHECKED_POSITIONS;
+                positions.add(BlockPos.asLong(min.x + index % edge, max.y, min.z + index / edge));
+            }
+        }
+        
+        @Setup(Level.Invocation)
+        public void swapPorts() {
+            swapped = !swapped;
+            final var state = (swapped ? rules.port : rules.casing).defaultBlockState();
+            for (int i = 0; i < positions.size(); i += 2) {
+                final long pos = positions.getLong(i);
+                level.setBlockState(BlockPos.getX(pos), BlockPos.getY(pos), BlockPos.getZ(pos), state);
+            }
+        }
+    }
+    
+    @Benchmark
+    public int full(FullState state) throws ValidationException {
+        final var walk = state.walk;
+        walk.begin(state.min, state.max);
+        walk.walkSections(RectangularWalk.sections(state.level, state.min, state.max, state.parallel), state.parallel);
+        return walk.foundBlocks();
+    }
+    
+    @Benchmark
+    public int inline(CubeState state) throws ValidationException {
+        final var walk = state.walk;
+        walk.begin(state.min, state.max);
+        walk.walkLevel(state.level);
+        return walk.foundBlocks();
+    }
+    
+    @Benchmark
+    public int incremental(IncrementalState state) throws ValidationException {
+        final var walk = state.walk;
+        walk.recheck(state.positions, RectangularWalk.blocks(state.level, state.positions));
+        return walk.foundBlocks();
+    }
+}
@@ -0,0 +1,62 @@
+package net.roguelogix.phosphophyllite.robn;
+
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode of a map shaped like a GUI sync packet, a few scalars per entry and some nesting
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ROBNBenchmark {
+    
+    @Param({"8", "64", "512"})
+    public int entries;
+    
+    private Map<String, Object> packet;
+    private ByteArrayList encoded;
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        packet = new HashMap<>();
+        for (int i = 0; i < entries; i++) {
+            final var entry = new HashMap<String, Object>();
+            entry.put("temperature", 293.15 + i);
+            entry.put("stored", (long) i * 1_000_000L);
+            entry.put("capacity", i * 100);
+            entry.put("active", (i & 1) == 0);
+            entry.put("name", "entry" + i);
+            final var history = new ArrayList<Double>();
+            for (int j = 0; j < 8; j++) {
+                history.add(i * 0.5 + j);
+            }
+            entry.put("history", history);
+            packet.put("entry" + i, entry);
+        }
+        encoded = ROBN.toROBN(packet);
+    }
+    
+    @Benchmark
+    public ByteArrayList encode() {
+        return ROBN.toROBN(packet);
+    }
+    
+    @Benchmark
+    public Object decode() {
+        return ROBN.fromROBN(encoded);
+    }
+    
+    @Benchmark
+    public Object roundTrip() {
+        return ROBN.fromROBN(ROBN.toROBN(packet));
+    }
+}
@@ -0,0 +1,82 @@
+package net.roguelogix.phosphophyllite.threading;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Enqueue to dequeue throughput of a batch of small work items
+ * With no threads the batch is drained inline with runAll, like the server thread queue
+ * With threads the benchmark thread waits on a final item that depends on the whole batch, like parallel multiblock ticking does
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkQueueBenchmark {
+    
+    private static final int BATCH = 1024;
+    
+    @Param({"0", "1", "4"})
+    public int threads;
+    
+    private WorkQueue queue;
+    private final AtomicInteger counter = new AtomicInteger();
+    private final Runnable work = counter::incrementAndGet;
+    private final Event[] events = new Event[BATCH];
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        queue = new WorkQueue();
+        if (threads > 0) {
+            queue.addProcessingThreads(threads, "Phosphophyllite WorkQueue Benchmark ");
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        queue.finish();
+        // dequeue threads only see the stop flag after taking an item
+        for (int i = 0; i < threads; i++) {
+            queue.enqueueUntracked(() -> {
+            });
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int untracked() {
+        if (threads == 0) {
+            for (int i = 0; i < BATCH; i++) {
+                queue.enqueueUntracked(work);
+            }
+            queue.runAll();
+            return counter.get();
+        }
+        for (int i = 0; i < BATCH - 1; i++) {
+            queue.enqueueUntracked(work);
+        }
+        final var done = new Event();
+        queue.enqueueUntracked(done::trigger);
+        done.join();
+        return counter.get();
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int tracked() {
+        for (int i = 0; i < BATCH; i++) {
+            events[i] = queue.enqueue(work);
+        }
+        if (threads == 0) {
+            queue.runAll();
+        } else {
+            queue.enqueue(() -> {
+            }, events).join();
+        }
+        return counter.get();
+    }
+}
@@ -0,0 +1,98 @@
+package net.roguelogix.phosphophyllite.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FastArraySet as the multiblock modules use it, a set of objects that is mostly iterated and occasionally churned
+ * Each op is over every element
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FastArraySetBenchmark {
+    
+    @Param({"64", "4096", "262144"})
+    public int size;
+    
+    private FastArraySet<Object> set;
+    private Object[] elements;
+    private Object[] shuffled;
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        elements = new Object[size];
+        for (int i = 0; i < size; i++) {
+            elements[i] = new Object();
+        }
+        shuffled = elements.clone();
+        final var random = new Random(0);
+        for (int j = shuffled.length - 1; j > 0; j--) {
+            final int k = random.nextInt(j + 1);
+            final var temp = shuffled[j];
+            shuffled[j] = shuffled[k];
+            shuffled[k] = temp;
+        }
+        set = new FastArraySet<>();
+        for (final var element : elements) {
+            set.add(element);
+        }
+    }
+    
+    @Benchmark
+    public FastArraySet<Object> add() {
+        final var newSet = new FastArraySet<>();
+        for (final var element : elements) {
+            newSet.add(element);
+        }
+        return newSet;
+    }
+    
+    /**
+     * Removes everything in random order and puts it back
+     */
+    @Benchmark
+    public int removeAndAdd() {
+        int moved = 0;
+        for (final var element : shuffled) {
+            if (set.remove(element)) {
+                moved++;
+            }
+        }
+        for (final var element : elements) {
+            set.add(element);
+        }
+        return moved;
+    }
+    
+    @Benchmark
+    public int contains() {
+        int found = 0;
+        for (final var element : shuffled) {
+            if (set.contains(element)) {
+                found++;
+            }
+        }
+        return found;
+    }
+    
+    @Benchmark
+    public void iterateIndexed(Blackhole blackhole) {
+        for (int i = 0; i < set.size(); i++) {
+            blackhole.consume(set.get(i));
+        }
+    }
+    
+    @Benchmark
+    public void iterateElements(Blackhole blackhole) {
+        for (final var element : set.elements()) {
+            blackhole.consume(element);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package net.roguelogix.phosphophyllite.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single transferWith, between two finite bodies and between a finite and an infinite one (ambient)
+ * Temperatures are reset every call so the bodies don't settle to equilibrium over the run
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeatBodyBenchmark {
+    
+    private final HeatBody hot = new HeatBody();
+    private final HeatBody cold = new HeatBody();
+    private final HeatBody ambient = new HeatBody();
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        hot.setRfPerKelvin(1000);
+        cold.setRfPerKelvin(250);
+        ambient.setInfinite(true);
+        ambient.setTemperature(293.15);
+    }
+    
+    @Benchmark
+    public double finite() {
+        hot.setTemperature(1200);
+        cold.setTemperature(300);
+        return hot.transferWith(cold, 50);
+    }
+    
+    @Benchmark
+    public double infinite() {
+        hot.setTemperature(1200);
+        return hot.transferWith(ambient, 50);
+    }
+}
@@ -0,0 +1,162 @@
+package net.roguelogix.phosphophyllite.util;
+
+import net.minecraft.SharedConstants;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.entity.BlockEntityType;
+import net.minecraft.world.level.block.state.BlockState;
+import net.roguelogix.phosphophyllite.modular.api.IModularTile;
+import net.roguelogix.phosphophyllite.modular.api.TileModule;
+import org.joml.Vector3i;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ModuleMap over a solid cube of stand in tiles, each op is over every module in the map
+ * Tiles need real block entity and block state instances, so this bootstraps the vanilla registries
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModuleMapBenchmark {
+    
+    private static final int OFFSET_X = -1000007;
+    private static final int OFFSET_Y = 57;
+    private static final int OFFSET_Z = 300005;
+    
+    static final class BenchTile extends BlockEntity implements IModularTile {
+        
+        final BenchModule module = new BenchModule(this);
+        
+        BenchTile(BlockPos pos, BlockState state) {
+            super(BlockEntityType.FURNACE, pos, state);
+        }
+        
+        @Override
+        public TileModule<?> module(Class<?> interfaceClazz) {
+            return module;
+        }
+        
+        @Override
+        public List<TileModule<?>> modules() {
+            return List.of(module);
+        }
+    }
+    
+    static final class BenchModule extends TileModule<BenchTile> {
+        BenchModule(IModularTile iface) {
+            super(iface);
+        }
+    }
+    
+    @Param({"hash", "section"})
+    public String indexType;
+    
+    @Param({"8", "32"})
+    public int edge;
+    
+    private ModuleMap<BenchModule, BenchTile> map;
+    private BenchModule[] modules;
+    private BenchModule[] shuffled;
+    private final Vector3i boxMin = new Vector3i();
+    private final Vector3i boxMax = new Vector3i();
+    
+    private ModuleMap<BenchModule, BenchTile> newMap() {
+        return new ModuleMap<>(new BenchModule[0], indexType.equals("hash") ? new HashPositionIndex() : new SectionPositionIndex());
+    }
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+        final var state = Blocks.FURNACE.defaultBlockState();
+        modules = new BenchModule[edge * edge * edge];
+        int i = 0;
+        for (int y = 0; y < edge; y++) {
+            for (int z = 0; z < edge; z++) {
+                for (int x = 0; x < edge; x++) {
+                    modules[i++] = new BenchTile(new BlockPos(OFFSET_X + x, OFFSET_Y + y, OFFSET_Z + z), state).module;
+                }
+            }
+        }
+        shuffled = modules.clone();
+        final var random = new Random(0);
+        for (int j = shuffled.length - 1; j > 0; j--) {
+            final int k = random.nextInt(j + 1);
+            final var temp = shuffled[j];
+            shuffled[j] = shuffled[k];
+            shuffled[k] = temp;
+        }
+        map = newMap();
+        for (final var module : modules) {
+            map.addModule(module);
+        }
+        boxMin.set(OFFSET_X + 1, OFFSET_Y + 1, OFFSET_Z + 1);
+        boxMax.set(OFFSET_X + edge - 2, OFFSET_Y + edge - 2, OFFSET_Z + edge - 2);
+    }
+    
+    @Benchmark
+    public ModuleMap<BenchModule, BenchTile> add() {
+        final var newMap = newMap();
+        for (final var module : modules) {
+            newMap.addModule(module);
+        }
+        return newMap;
+    }
+    
+    /**
+     * Removes everything in random order and puts it back, random removal is the swap-remove worst case
+     */
+    @Benchmark
+    public int removeAndAdd() {
+        int removed = 0;
+        for (final var module : shuffled) {
+            if (map.removeModule(module)) {
+                removed++;
+            }
+        }
+        for (final var module : modules) {
+            map.addModule(module);
+        }
+        return removed;
+    }
+    
+    @Benchmark
+    public void lookup(Blackhole blackhole) {
+        for (final var module : shuffled) {
+            blackhole.consume(map.getModule(module.iface.getBlockPos()));
+        }
+    }
+    
+    @Benchmark
+    public void forEachModule(Blackhole blackhole) {
+        map.forEachModule(blackhole::consume);
+    }
+    
+    @Benchmark
+    public void forEachTileAndModule(Blackhole blackhole) {
+        map.forEachTileAndModule((tile, module) -> blackhole.consume(module));
+    }
+    
+    @Benchmark
+    public void forEachTileAndModuleAndPosLong(Blackhole blackhole) {
+        map.forEachTileAndModuleAndPosLong((tile, module, pos) -> blackhole.consume(pos));
+    }
+    
+    /**
+     * Interior of the cube, one block in from every face
+     */
+    @Benchmark
+    public void forEachModuleInBox(Blackhole blackhole) {
+        map.forEachModuleInBox(boxMin, boxMax, blackhole::consume);
+    }
+}
@@ -0,0 +1,121 @@
+package net.roguelogix.phosphophyllite.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the hash map index ModuleMap has always used against the section bucketed one, over a solid cube of blocks
+ * The cube is offset so it straddles section boundaries on every axis
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PositionIndexBenchmark {
+    
+    private static final int OFFSET_X = -1000007;
+    private static final int OFFSET_Y = 57;
+    private static final int OFFSET_Z = 300005;
+    
+    @Param({"hash", "section"})
+    public String indexType;
+    
+    @Param({"8", "32", "64"})
+    public int edge;
+    
+    private PositionIndex index;
+    private int[] xs;
+    private int[] ys;
+    private int[] zs;
+    private int[] shuffled;
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        index = indexType.equals("hash") ? new HashPositionIndex() : new SectionPositionIndex();
+        final int count = edge * edge * edge;
+        xs = new int[count];
+        ys = new int[count];
+        zs = new int[count];
+        int i = 0;
+        for (int y = 0; y < edge; y++) {
+            for (int z = 0; z < edge; z++) {
+                for (int x = 0; x < edge; x++) {
+                    xs[i] = OFFSET_X + x;
+                    ys[i] = OFFSET_Y + y;
+                    zs[i] = OFFSET_Z + z;
+                    index.put(xs[i], ys[i], zs[i], i);
+                    i++;
+                }
+            }
+        }
+        shuffled = new int[count];
+        for (int j = 0; j < count; j++) {
+            shuffled[j] = j;
+        }
+        final var random = new Random(0);
+        for (int j = count - 1; j > 0; j--) {
+            final int k = random.nextInt(j + 1);
+            final int temp = shuffled[j];
+            shuffled[j] = shuffled[k];
+            shuffled[k] = temp;
+        }
+    }
+    
+    /**
+     * What neighbor updates and connectivity searches do, six lookups around every member
+     */
+    @Benchmark
+    public int neighborLookups() {
+        int sum = 0;
+        for (int i = 0; i < xs.length; i++) {
+            final int x = xs[i], y = ys[i], z = zs[i];
+            sum += index.get(x + 1, y, z);
+            sum += index.get(x - 1, y, z);
+            sum += index.get(x, y + 1, z);
+            sum += index.get(x, y - 1, z);
+            sum += index.get(x, y, z + 1);
+            sum += index.get(x, y, z - 1);
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public int randomLookups() {
+        int sum = 0;
+        for (int i = 0; i < shuffled.length; i++) {
+            final int j = shuffled[i];
+            sum += index.get(xs[j], ys[j], zs[j]);
+        }
+        return sum;
+    }
+    
+    /**
+     * Interior of the cube, one block in from every face
+     */
+    @Benchmark
+    public void boxQuery(Blackhole blackhole) {
+        index.forEachInBox(OFFSET_X + 1, OFFSET_Y + 1, OFFSET_Z + 1, OFFSET_X + edge - 2, OFFSET_Y + edge - 2, OFFSET_Z + edge - 2, blackhole::consume);
+    }
+    
+    /**
+     * Removes and re-adds the top layer, what breaking and replacing blocks does
+     */
+    @Benchmark
+    public int removeAndPut() {
+        final int layer = edge * edge;
+        final int start = xs.length - layer;
+        int sum = 0;
+        for (int i = start; i < xs.length; i++) {
+            sum += index.remove(xs[i], ys[i], zs[i]);
+        }
+        for (int i = start; i < xs.length; i++) {
+            sum += index.put(xs[i], ys[i], zs[i], i);
+        }
+        return sum;
+    }
+}
@@ -31,6 +31,53 @@ public class PhosphophylliteConfig {
     @ConfigValue
     public final GUI gui = new GUI();
     
+    public static class Multiblock {
+        @ConfigValue(comment = "Updates multiblocks in parallel on worker threads\nOnly multiblocks that declare their updates as thread safe are affected, all others still update on the server thread")
+        public final boolean parallelTick;
+        
+        {
+            parallelTick = false;
+        }
+        
+        @ConfigValue(range = "[0,)", comment = "Time per tick per level that multiblock structural work (splits, merges, validation) may take, in milliseconds\nControllers whose pending work doesn't fit wait for the next tick and are picked up first then, they keep ticking meanwhile, at least one always gets its work done\n0 for no limit")
+        public final long structuralTickBudgetMS;
+        
+        {
+            structuralTickBudgetMS = 10;
+        }
+        
+        @ConfigValue(range = "[0,)", comment = "Structural events (attach, detach, merge, split, validation) kept per level for the \"phosphophyllite journal\" command\n0 to disable")
+        public final int structureJournalSize;
+        
+        {
+            structureJournalSize = 1024;
+        }
+        
+        @ConfigValue(range = "[0,20]", comment = "Ticks that broken multiblock blocks are collected for before checking if the multiblock was split\nBreaks in that window are checked together, only around where blocks were removed\n0 to check on the next multiblock tick")
+        public final int detachmentWindowTicks;
+        
+        {
+            detachmentWindowTicks = 2;
+        }
+        
+        @ConfigValue(range = "[0,)", comment = "Rectangular multiblocks with at least this many blocks in their bounding box are validated a chunk section at a time on worker threads\nOnly multiblocks that declare their validation as thread safe are affected, sections are copied on the server thread first\n0 to disable")
+        public final int parallelValidationMinVolume;
+        
+        {
+            parallelValidationMinVolume = 65536;
+        }
+        
+        @ConfigValue(comment = "Validates multiblocks on worker threads, the result is applied on a later tick\nOnly multiblocks that declare their validation as thread safe are affected, all others still validate inline")
+        public final boolean asyncValidation;
+        
+        {
+            asyncValidation = false;
+        }
+    }
+    
+    @ConfigValue
+    public final Multiblock multiblock = new Multiblock();
+    
     
     @RegisterConfig.Registration
     public static void registration() {
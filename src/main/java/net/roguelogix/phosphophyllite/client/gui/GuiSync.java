@@ -21,12 +21,14 @@ import net.minecraftforge.network.simple.SimpleChannel;
 import net.roguelogix.phosphophyllite.Phosphophyllite;
 import net.roguelogix.phosphophyllite.registry.OnModLoad;
 import net.roguelogix.phosphophyllite.robn.ROBN;
+import net.roguelogix.phosphophyllite.threading.Queues;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 
 import static net.roguelogix.phosphophyllite.Phosphophyllite.modid;
@@ -35,6 +37,10 @@ public class GuiSync {
     
     public interface IGUIPacketProvider {
         
+        /**
+         * Called on the server thread between ticks, along with {@link IGUIPacket#write()}, so live state can be read
+         * Anything reading multiblock state from another thread should use {@link net.roguelogix.phosphophyllite.multiblock.MultiblockController#snapshot()} instead
+         */
         @Nullable
         IGUIPacket getGuiPacket();
         
@@ -133,35 +139,9 @@ public class GuiSync {
         }
         Thread updateThread = new Thread(() -> {
             while (true) {
-                synchronized (GuiSync.class) {
-                    playerGUIs.forEach((player, gui) -> {
-                        try {
-                            assert player instanceof ServerPlayer;
-                            IGUIPacket packet = gui.getGuiPacket();
-                            if (packet == null) {
-                                return;
-                            }
-                            Map<?, ?> packetMap = packet.write();
-                            if (packetMap == null) {
-                                return;
-                            }
-                            ByteArrayList buf;
-                            try {
-                                buf = ROBN.toROBN(packetMap);
-                            } catch (IllegalStateException e) {
-                                e.printStackTrace();
-                                return;
-                            }
-                            GUIPacketMessage message = new GUIPacketMessage();
-                            message.bytes = new byte[buf.size()];
-                            for (int i = 0; i < buf.size(); i++) {
-                                message.bytes[i] = buf.get(i);
-                            }
-                            INSTANCE.sendTo(message, ((ServerPlayer) player).connection.connection, NetworkDirection.PLAY_TO_CLIENT);
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    });
+                // packets read live state, so they are written and encoded on the server thread, only sending happens off of it
+                if (packetsPending.compareAndSet(false, true)) {
+                    Queues.serverThread.enqueueUntracked(GuiSync::writePackets);
                 }
                 try {
                     //noinspection BusyWait
@@ -176,6 +156,59 @@ public class GuiSync {
         updateThread.start();
     }
     
+    private record PlayerPacket(ServerPlayer player, GUIPacketMessage message) {
+    }
+    
+    // a write is queued on the server thread, only one at a time so a stalled server doesn't pile them up
+    private static final AtomicBoolean packetsPending = new AtomicBoolean();
+    
+    private static synchronized void writePackets() {
+        final var packets = new ArrayList<PlayerPacket>(playerGUIs.size());
+        playerGUIs.forEach((player, gui) -> {
+            try {
+                assert player instanceof ServerPlayer;
+                IGUIPacket packet = gui.getGuiPacket();
+                if (packet == null) {
+                    return;
+                }
+                Map<?, ?> packetMap = packet.write();
+                if (packetMap == null) {
+                    return;
+                }
+                // encoded here, providers may reuse the map or the objects in it for the next write
+                ByteArrayList buf;
+                try {
+                    buf = ROBN.toROBN(packetMap);
+                } catch (IllegalStateException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                GUIPacketMessage message = new GUIPacketMessage();
+                message.bytes = new byte[buf.size()];
+                for (int i = 0; i < buf.size(); i++) {
+                    message.bytes[i] = buf.get(i);
+                }
+                packets.add(new PlayerPacket((ServerPlayer) player, message));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        packetsPending.set(false);
+        if (!packets.isEmpty()) {
+            Queues.offThread.enqueueUntracked(() -> sendPackets(packets));
+        }
+    }
+    
+    private static void sendPackets(ArrayList<PlayerPacket> packets) {
+        for (final var packet : packets) {
+            try {
+                INSTANCE.sendTo(packet.message, packet.player.connection.connection, NetworkDirection.PLAY_TO_CLIENT);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+    
     private static void encodePacket(@Nonnull GUIPacketMessage packet, @Nonnull FriendlyByteBuf buf) {
         buf.writeBytes(packet.bytes);
     }
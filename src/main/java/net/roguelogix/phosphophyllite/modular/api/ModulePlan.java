@@ -0,0 +1,58 @@
+package net.roguelogix.phosphophyllite.modular.api;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.roguelogix.phosphophyllite.util.NonnullDefault;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The registered modules a concrete class gets, in registration order
+ * Built once per class by {@link ModulePlanCache} and shared by every instance of that class
+ */
+@NonnullDefault
+public final class ModulePlan<Target, Module> {
+    
+    private final Class<?>[] interfaces;
+    private final Function<Target, Module>[] constructors;
+    private final Reference2IntOpenHashMap<Class<?>> indices;
+    
+    ModulePlan(Class<?> clazz, Map<? extends Class<?>, ? extends Function<Target, Module>> registry) {
+        final var interfaces = new ArrayList<Class<?>>();
+        final var constructors = new ArrayList<Function<Target, Module>>();
+        registry.forEach((moduleInterface, constructor) -> {
+            if (moduleInterface.isAssignableFrom(clazz)) {
+                interfaces.add(moduleInterface);
+                constructors.add(constructor);
+            }
+        });
+        this.interfaces = interfaces.toArray(new Class<?>[0]);
+        //noinspection unchecked
+        this.constructors = constructors.toArray(new Function[0]);
+        indices = new Reference2IntOpenHashMap<>(this.interfaces.length);
+        indices.defaultReturnValue(-1);
+        for (int i = 0; i < this.interfaces.length; i++) {
+            indices.put(this.interfaces[i], i);
+        }
+    }
+    
+    public int size() {
+        return interfaces.length;
+    }
+    
+    public Class<?> moduleInterface(int index) {
+        return interfaces[index];
+    }
+    
+    public Module construct(int index, Target target) {
+        return constructors[index].apply(target);
+    }
+    
+    /**
+     * @return index of the module for that interface, -1 if the class doesn't have one
+     */
+    public int indexOf(Class<?> moduleInterface) {
+        return indices.getInt(moduleInterface);
+    }
+}
@@ -0,0 +1,40 @@
+package net.roguelogix.phosphophyllite.modular.api;
+
+import net.roguelogix.phosphophyllite.util.NonnullDefault;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Per class {@link ModulePlan}s over a module registry, so constructing an instance doesn't walk the whole registry
+ * The registry must call {@link #invalidate()} after anything is registered
+ */
+@NonnullDefault
+public final class ModulePlanCache<Target, Module> {
+    
+    private final Map<? extends Class<?>, ? extends Function<Target, Module>> registry;
+    // ClassValue can't be cleared, so invalidating swaps in a fresh one
+    private volatile ClassValue<ModulePlan<Target, Module>> plans;
+    
+    public ModulePlanCache(Map<? extends Class<?>, ? extends Function<Target, Module>> registry) {
+        this.registry = registry;
+        this.plans = newPlans();
+    }
+    
+    private ClassValue<ModulePlan<Target, Module>> newPlans() {
+        return new ClassValue<>() {
+            @Override
+            protected ModulePlan<Target, Module> computeValue(Class<?> clazz) {
+                return new ModulePlan<>(clazz, registry);
+            }
+        };
+    }
+    
+    public ModulePlan<Target, Module> get(Class<?> clazz) {
+        return plans.get(clazz);
+    }
+    
+    public void invalidate() {
+        plans = newPlans();
+    }
+}
@@ -17,6 +17,8 @@ public class ModuleRegistry {
     private static final ArrayList<BiConsumer<Class<? extends IModularTile>, Function<BlockEntity, TileModule<?>>>> externalTileRegistrars = new ArrayList<>();
     private static final LinkedHashMap<Class<? extends IModularBlock>, Function<Block, BlockModule<?>>> blockModuleRegistry = new LinkedHashMap<>();
     private static final ArrayList<BiConsumer<Class<? extends IModularBlock>, Function<Block, BlockModule<?>>>> externalBlockRegistrars = new ArrayList<>();
+    private static final ModulePlanCache<BlockEntity, TileModule<?>> tileModulePlans = new ModulePlanCache<>(tileModuleRegistry);
+    private static final ModulePlanCache<Block, BlockModule<?>> blockModulePlans = new ModulePlanCache<>(blockModuleRegistry);
     
     /**
      * Registers an ITileModule and the interface the tile class will implement to signal to create an instance at tile creation
@@ -31,6 +33,7 @@ public class ModuleRegistry {
         //noinspection unchecked
         final Function<BlockEntity, TileModule<?>> wrapped = tile -> constructor.apply((T) tile);
         tileModuleRegistry.put(moduleInterface, wrapped);
+        tileModulePlans.invalidate();
         externalTileRegistrars.forEach(c -> c.accept(moduleInterface, wrapped));
     }
     
@@ -38,6 +41,7 @@ public class ModuleRegistry {
         //noinspection unchecked
         final Function<Block, BlockModule<?>> wrapped = block -> constructor.apply((B) block);
         blockModuleRegistry.put(moduleInterface, wrapped);
+        blockModulePlans.invalidate();
         externalBlockRegistrars.forEach(c -> c.accept(moduleInterface, wrapped));
     }
     
@@ -61,4 +65,18 @@ public class ModuleRegistry {
     public static void forEachBlockModule(BiConsumer<Class<? extends IModularBlock>, Function<Block, BlockModule<?>>> callback) {
         blockModuleRegistry.forEach(callback);
     }
+    
+    /**
+     * @return the tile modules an instance of the class gets, cached per class until another tile module is registered
+     */
+    public static ModulePlan<BlockEntity, TileModule<?>> tileModulePlan(Class<?> tileClass) {
+        return tileModulePlans.get(tileClass);
+    }
+    
+    /**
+     * @return the block modules an instance of the class gets, cached per class until another block module is registered
+     */
+    public static ModulePlan<Block, BlockModule<?>> blockModulePlan(Class<?> blockClass) {
+        return blockModulePlans.get(blockClass);
+    }
 }
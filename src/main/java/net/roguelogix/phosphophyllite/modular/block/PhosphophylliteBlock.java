@@ -43,17 +43,15 @@ public class PhosphophylliteBlock extends Block implements IModularBlock {
         if (modules != null) {
             return;
         }
-        final Int2ObjectMap<BlockModule<?>> modules = new Int2ObjectOpenHashMap<>();
-        final List<BlockModule<?>> moduleList = new ArrayList<>();
         // must be called before super constructor
-        Class<?> thisClazz = this.getClass();
-        ModuleRegistry.forEachBlockModule((clazz, constructor) -> {
-            if (clazz.isAssignableFrom(thisClazz)) {
-                var module = constructor.apply(this);
-                modules.put(clazz.hashCode(), module);
-                moduleList.add(module);
-            }
-        });
+        final var plan = ModuleRegistry.blockModulePlan(this.getClass());
+        final Int2ObjectMap<BlockModule<?>> modules = new Int2ObjectOpenHashMap<>(plan.size());
+        final List<BlockModule<?>> moduleList = new ArrayList<>(plan.size());
+        for (int i = 0; i < plan.size(); i++) {
+            var module = plan.construct(i, this);
+            modules.put(plan.moduleInterface(i).hashCode(), module);
+            moduleList.add(module);
+        }
         this.modules = modules;
         this.moduleList = Collections.unmodifiableList(moduleList);
     }
@@ -20,6 +20,7 @@ import net.minecraftforge.event.server.ServerStoppedEvent;
 import net.roguelogix.phosphophyllite.debug.DebugInfo;
 import net.roguelogix.phosphophyllite.debug.IDebuggable;
 import net.roguelogix.phosphophyllite.modular.api.IModularTile;
+import net.roguelogix.phosphophyllite.modular.api.ModulePlan;
 import net.roguelogix.phosphophyllite.modular.api.ModuleRegistry;
 import net.roguelogix.phosphophyllite.modular.api.TileModule;
 import net.roguelogix.phosphophyllite.util.NonnullDefault;
@@ -42,26 +43,29 @@ public class PhosphophylliteTile extends BlockEntity implements IModularTile, ID
     public static final Logger LOGGER = MODULE_LOGGER;
     
     boolean removed = false;
-    private final Object2ObjectOpenHashMap<Class<?>, TileModule<?>> modules = new Object2ObjectOpenHashMap<>();
-    private final ArrayList<TileModule<?>> moduleList = new ArrayList<>();
-    private final List<TileModule<?>> moduleListRO = Collections.unmodifiableList(moduleList);
+    // shared per class, maps module interfaces to indices in moduleList
+    private final ModulePlan<BlockEntity, TileModule<?>> modulePlan;
+    private final ArrayList<TileModule<?>> moduleList;
+    private final List<TileModule<?>> moduleListRO;
     
     public PhosphophylliteTile(BlockEntityType<?> tileEntityTypeIn, BlockPos pos, BlockState state) {
         super(tileEntityTypeIn, pos, state);
-        Class<?> thisClazz = this.getClass();
-        ModuleRegistry.forEachTileModule((clazz, constructor) -> {
-            if (clazz.isAssignableFrom(thisClazz)) {
-                TileModule<?> module = constructor.apply(this);
-                modules.put(clazz, module);
-                moduleList.add(module);
-            }
-        });
+        modulePlan = ModuleRegistry.tileModulePlan(this.getClass());
+        moduleList = new ArrayList<>(modulePlan.size());
+        moduleListRO = Collections.unmodifiableList(moduleList);
+        for (int i = 0; i < modulePlan.size(); i++) {
+            moduleList.add(modulePlan.construct(i, this));
+        }
         moduleList.forEach(TileModule::postModuleConstruction);
     }
     
     @Nullable
     public TileModule<?> module(Class<?> interfaceClazz) {
-        return modules.get(interfaceClazz);
+        final int index = modulePlan.indexOf(interfaceClazz);
+        if (index == -1) {
+            return null;
+        }
+        return moduleList.get(index);
     }
     
     @Override
@@ -353,10 +357,10 @@ public class PhosphophylliteTile extends BlockEntity implements IModularTile, ID
     public DebugInfo getDebugInfo() {
         final var moduleInfo = new DebugInfo("Module Debug Info");
     
-        for (final var moduleEntry : modules.entrySet()) {
-            final var moduleDebugInfo = moduleEntry.getValue().getDebugInfo();
+        for (int i = 0; i < moduleList.size(); i++) {
+            final var moduleDebugInfo = moduleList.get(i).getDebugInfo();
             if (moduleDebugInfo == null) {
-                final var interfaceClass = moduleEntry.getKey();
+                final var interfaceClass = modulePlan.moduleInterface(i);
                 moduleInfo.add(new DebugInfo(interfaceClass.getCanonicalName().substring(interfaceClass.getPackageName().length() + 1)));
                 continue;
             }
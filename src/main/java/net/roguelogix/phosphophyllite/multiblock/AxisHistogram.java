@@ -0,0 +1,122 @@
+package net.roguelogix.phosphophyllite.multiblock;
+
+import net.roguelogix.phosphophyllite.util.NonnullDefault;
+
+/**
+ * Count of blocks at each coordinate along one axis, dense over the range seen so far
+ * <p>
+ * When the last block on the min or max plane is removed, the bound walks inward to the next non-empty coordinate
+ * A connected structure has no empty coordinates between its bounds, so that walk is a single step outside of mid-split states
+ */
+@NonnullDefault
+final class AxisHistogram {
+    
+    private int[] counts = new int[16];
+    // coordinate of counts[0]
+    private int origin = 0;
+    private int min = Integer.MAX_VALUE;
+    private int max = Integer.MIN_VALUE;
+    private int total = 0;
+    
+    int min() {
+        return min;
+    }
+    
+    int max() {
+        return max;
+    }
+    
+    void add(int coordinate) {
+        add(coordinate, 1);
+    }
+    
+    private void add(int coordinate, int count) {
+        if (total == 0) {
+            // everything is zero, so it can be freely moved
+            origin = coordinate - counts.length / 2;
+            min = coordinate;
+            max = coordinate;
+        } else {
+            if (coordinate < min) {
+                min = coordinate;
+            }
+            if (coordinate > max) {
+                max = coordinate;
+            }
+            ensureCovers(min, max);
+        }
+        counts[coordinate - origin] += count;
+        total += count;
+    }
+    
+    void remove(int coordinate) {
+        final int index = coordinate - origin;
+        if (index < 0 || index >= counts.length || counts[index] == 0) {
+            return;
+        }
+        counts[index]--;
+        total--;
+        if (total == 0) {
+            min = Integer.MAX_VALUE;
+            max = Integer.MIN_VALUE;
+            return;
+        }
+        if (counts[index] != 0) {
+            return;
+        }
+        if (coordinate == min) {
+            while (counts[min - origin] == 0) {
+                min++;
+            }
+        }
+        if (coordinate == max) {
+            while (counts[max - origin] == 0) {
+                max--;
+            }
+        }
+    }
+    
+    /**
+     * Walks the other histogram's range, not its blocks
+     */
+    void addAll(AxisHistogram other) {
+        if (other.total == 0) {
+            return;
+        }
+        for (int coordinate = other.min; coordinate <= other.max; coordinate++) {
+            final int count = other.counts[coordinate - other.origin];
+            if (count != 0) {
+                add(coordinate, count);
+            }
+        }
+    }
+    
+    void clear() {
+        if (total != 0) {
+            for (int coordinate = min; coordinate <= max; coordinate++) {
+                counts[coordinate - origin] = 0;
+            }
+        }
+        min = Integer.MAX_VALUE;
+        max = Integer.MIN_VALUE;
+        total = 0;
+    }
+    
+    private void ensureCovers(int low, int high) {
+        if (low >= origin && high < origin + counts.length) {
+            return;
+        }
+        final int span = high - low + 1;
+        final int newLength = Math.max(counts.length * 2, span + 16);
+        final int newOrigin = low - (newLength - span) / 2;
+        final int[] newCounts = new int[newLength];
+        // only [min, max] can be non-zero, and the caller has already widened those to include low and high
+        final int oldLow = Math.max(origin, low);
+        final int oldHigh = Math.min(origin + counts.length - 1, high);
+        if (oldLow <= oldHigh) {
+            System.arraycopy(counts, oldLow - origin, newCounts, oldLow - newOrigin, oldHigh - oldLow + 1);
+        }
+        counts = newCounts;
+        origin = newOrigin;
+    }
+}
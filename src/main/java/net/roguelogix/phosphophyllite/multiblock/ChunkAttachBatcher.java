@@ -0,0 +1,139 @@
+package net.roguelogix.phosphophyllite.multiblock;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.roguelogix.phosphophyllite.threading.Queues;
+import net.roguelogix.phosphophyllite.util.NonnullDefault;
+import net.roguelogix.phosphophyllite.util.Util;
+
+import java.util.Objects;
+
+import static net.roguelogix.phosphophyllite.util.Util.DIRECTIONS;
+
+/**
+ * Collects tiles that started ticking, per chunk, and attaches each chunk's worth at once
+ * <p>
+ * Tiles next to an already existing controller are handed to it first, then attachment floods out through the rest of the chunk's tiles
+ * Whatever is left gets one new controller per connected group, instead of one per tile that then immediately merge
+ */
+@NonnullDefault
+final class ChunkAttachBatcher {
+    
+    private static Object2ObjectOpenHashMap<Level, Long2ObjectOpenHashMap<ObjectArrayList<MultiblockTileModule<?, ?, ?>>>> pending = new Object2ObjectOpenHashMap<>();
+    private static boolean flushQueued = false;
+    
+    // scratch, only touched from the server thread
+    private static final Long2ObjectOpenHashMap<MultiblockTileModule<?, ?, ?>> chunkModules = new Long2ObjectOpenHashMap<>();
+    private static final ObjectArrayList<MultiblockTileModule<?, ?, ?>> floodQueue = new ObjectArrayList<>();
+    private static final BlockPos.MutableBlockPos neighborPos = new BlockPos.MutableBlockPos();
+    
+    static void enqueue(MultiblockTileModule<?, ?, ?> module) {
+        final var level = Objects.requireNonNull(module.iface.getLevel());
+        if (level.isClientSide) {
+            return;
+        }
+        final var pos = module.iface.getBlockPos();
+        pending.computeIfAbsent(level, k -> new Long2ObjectOpenHashMap<>())
+                .computeIfAbsent(ChunkPos.asLong(pos.getX() >> 4, pos.getZ() >> 4), k -> new ObjectArrayList<>())
+                .add(module);
+        if (!flushQueued) {
+            flushQueued = true;
+            Queues.serverThread.enqueueUntracked(ChunkAttachBatcher::flush);
+        }
+    }
+    
+    private static void flush() {
+        // attaching can cause more tiles to be enqueued, those go in the next batch
+        final var batches = pending;
+        pending = new Object2ObjectOpenHashMap<>();
+        flushQueued = false;
+        for (final var levelEntry : batches.object2ObjectEntrySet()) {
+            final var level = levelEntry.getKey();
+            for (final var chunk : levelEntry.getValue().values()) {
+                attachChunk(level, chunk);
+            }
+        }
+    }
+    
+    private static void attachChunk(Level level, ObjectArrayList<MultiblockTileModule<?, ?, ?>> modules) {
+        chunkModules.clear();
+        floodQueue.clear();
+        for (int i = 0; i < modules.size(); i++) {
+            final var module = modules.get(i);
+            if (!module.prepareAttach()) {
+                continue;
+            }
+            chunkModules.put(module.iface.getBlockPos().asLong(), module);
+        }
+        if (chunkModules.isEmpty()) {
+            return;
+        }
+        
+        // hook onto controllers that already exist
+        for (final var module : chunkModules.values()) {
+            final var pos = module.iface.getBlockPos();
+            for (final var direction : DIRECTIONS) {
+                neighborPos.setWithOffset(pos, direction);
+                if (chunkModules.containsKey(neighborPos.asLong())) {
+                    // handled by the flood
+                    continue;
+                }
+                if (!(Util.getTile(level, neighborPos) instanceof IMultiblockTile<?, ?, ?> multiblockTile)) {
+                    continue;
+                }
+                final var neighborController = multiblockTile.multiblockModule().controller();
+                if (neighborController == null || !module.shouldConnectTo(multiblockTile, direction)) {
+                    continue;
+                }
+                neighborController.attemptAttach(module);
+            }
+            if (module.controller() != null) {
+                floodQueue.add(module);
+            }
+        }
+        flood();
+        
+        // one controller per group that didn't touch anything existing
+        for (final var module : chunkModules.values()) {
+            if (module.controller() != null) {
+                continue;
+            }
+            module.iface.createController().attemptAttach(module);
+            if (module.controller() != null) {
+                floodQueue.add(module);
+                flood();
+            }
+        }
+        
+        chunkModules.clear();
+    }
+    
+    private static void flood() {
+        for (int i = 0; i < floodQueue.size(); i++) {
+            final var module = floodQueue.get(i);
+            final var controller = module.controller();
+            if (controller == null) {
+                continue;
+            }
+            final var pos = module.iface.getBlockPos();
+            for (final var direction : DIRECTIONS) {
+                neighborPos.setWithOffset(pos, direction);
+                final var neighbor = chunkModules.get(neighborPos.asLong());
+                if (neighbor == null || neighbor.controller() == controller || !module.shouldConnectTo(neighbor.iface, direction)) {
+                    continue;
+                }
+                final boolean wasUnattached = neighbor.controller() == null;
+                // if the neighbor was attached elsewhere this requests a merge instead
+                controller.attemptAttach(neighbor);
+                if (wasUnattached && neighbor.controller() != null) {
+                    floodQueue.add(neighbor);
+                }
+            }
+        }
+        floodQueue.clear();
+    }
+}
@@ -0,0 +1,119 @@
+package net.roguelogix.phosphophyllite.multiblock;
+
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.roguelogix.phosphophyllite.multiblock.modular.MultiblockControllerModule;
+import net.roguelogix.phosphophyllite.util.NonnullDefault;
+
+import java.util.List;
+
+/**
+ * A controller's modules split up by which hooks they override, most modules only override one or two
+ * Attach and detach loops walk only the modules that do something for that hook instead of every module
+ * <p>
+ * Overrides are found with reflection once per module class
+ */
+@NonnullDefault
+final class ControllerModuleDispatch<
+        TileType extends BlockEntity & IMultiblockTile<TileType, BlockType, ControllerType>,
+        BlockType extends Block & IMultiblockBlock,
+        ControllerType extends MultiblockController<TileType, BlockType, ControllerType>
+        > {
+    
+    enum Hook {
+        CAN_ATTACH_PART("canAttachPart", BlockEntity.class),
+        ON_PART_ADDED("onPartAdded", BlockEntity.class),
+        ON_PART_REMOVED("onPartRemoved", BlockEntity.class),
+        ON_PART_LOADED("onPartLoaded", BlockEntity.class),
+        ON_PART_UNLOADED("onPartUnloaded", BlockEntity.class),
+        ON_PART_ATTACHED("onPartAttached", BlockEntity.class),
+        ON_PART_DETACHED("onPartDetached", BlockEntity.class),
+        ON_PART_PLACED("onPartPlaced", BlockEntity.class),
+        ON_PART_BROKEN("onPartBroken", BlockEntity.class),
+        ON_PARTS_ATTACHED("onPartsAttached", List.class),
+        ON_PARTS_DETACHED("onPartsDetached", List.class),
+        MERGE("merge", MultiblockController.class),
+        SPLIT("split", List.class),
+        PRE_UPDATE("preUpdate"),
+        STRUCTURAL_WORK_PENDING("structuralWorkPending"),
+        UPDATE("update"),
+        ;
+        
+        private final String methodName;
+        private final Class<?>[] parameterTypes;
+        
+        Hook(String methodName, Class<?>... parameterTypes) {
+            this.methodName = methodName;
+            this.parameterTypes = parameterTypes;
+        }
+        
+        private int bit() {
+            return 1 << ordinal();
+        }
+    }
+    
+    private static final ClassValue<Integer> OVERRIDDEN_HOOKS = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(Class<?> moduleClass) {
+            int hooks = 0;
+            for (final var hook : Hook.values()) {
+                if (overrides(moduleClass, hook)) {
+                    hooks |= hook.bit();
+                }
+            }
+            // the default batched callbacks forward to the single part ones
+            if ((hooks & (Hook.ON_PART_ADDED.bit() | Hook.ON_PART_ATTACHED.bit())) != 0) {
+                hooks |= Hook.ON_PARTS_ATTACHED.bit();
+            }
+            if ((hooks & (Hook.ON_PART_DETACHED.bit() | Hook.ON_PART_REMOVED.bit())) != 0) {
+                hooks |= Hook.ON_PARTS_DETACHED.bit();
+            }
+            return hooks;
+        }
+    };
+    
+    private static boolean overrides(Class<?> moduleClass, Hook hook) {
+        try {
+            // generic overrides get a bridge method with the erased signature, declared in the overriding class
+            return moduleClass.getMethod(hook.methodName, hook.parameterTypes).getDeclaringClass() != MultiblockControllerModule.class;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
+    }
+    
+    private final MultiblockControllerModule<TileType, BlockType, ControllerType>[][] modulesByHook;
+    
+    ControllerModuleDispatch(List<MultiblockControllerModule<TileType, BlockType, ControllerType>> modules) {
+        final var hooks = Hook.values();
+        //noinspection unchecked
+        modulesByHook = new MultiblockControllerModule[hooks.length][];
+        final int[] moduleHooks = new int[modules.size()];
+        for (int i = 0; i < modules.size(); i++) {
+            moduleHooks[i] = OVERRIDDEN_HOOKS.get(modules.get(i).getClass());
+        }
+        for (final var hook : hooks) {
+            int count = 0;
+            for (final int moduleHook : moduleHooks) {
+                if ((moduleHook & hook.bit()) != 0) {
+                    count++;
+                }
+            }
+            //noinspection unchecked
+            final MultiblockControllerModule<TileType, BlockType, ControllerType>[] hookModules = new MultiblockControllerModule[count];
+            count = 0;
+            for (int i = 0; i < moduleHooks.length; i++) {
+                if ((moduleHooks[i] & hook.bit()) != 0) {
+                    hookModules[count++] = modules.get(i);
+                }
+            }
+            modulesByHook[hook.ordinal()] = hookModules;
+        }
+    }
+    
+    /**
+     * @return the modules overriding the hook, in module order, do not modify
+     */
+    MultiblockControllerModule<TileType, BlockType, ControllerType>[] modules(Hook hook) {
+        return modulesByHook[hook.ordinal()];
+    }
+}
@@ -0,0 +1,74 @@
+package net.roguelogix.phosphophyllite.multiblock;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import net.roguelogix.phosphophyllite.util.NonnullDefault;
+
+/**
+ * Same idea as {@link net.roguelogix.phosphophyllite.util.FastArraySet}, but the index is stored on the controller instead of in a hash map
+ * A controller can be in one set per slot, {@link MultiblockRegistry} uses one slot for every controller in a level, and one for the ones being ticked
+ * Removal swaps the last element into the removed one's place, so order isn't stable
+ */
+@NonnullDefault
+final class ControllerSet {
+    
+    static final int REGISTERED = 0;
+    static final int TICKING = 1;
+    
+    private final int slot;
+    private final ObjectArrayList<MultiblockController<?, ?, ?>> elements = new ObjectArrayList<>();
+    
+    ControllerSet(int slot) {
+        this.slot = slot;
+    }
+    
+    boolean add(MultiblockController<?, ?, ?> controller) {
+        if (contains(controller)) {
+            return false;
+        }
+        controller.registryIndices[slot] = elements.size();
+        elements.add(controller);
+        return true;
+    }
+    
+    boolean remove(MultiblockController<?, ?, ?> controller) {
+        if (!contains(controller)) {
+            return false;
+        }
+        final int index = controller.registryIndices[slot];
+        final var popped = elements.pop();
+        if (index != elements.size()) {
+            elements.set(index, popped);
+            popped.registryIndices[slot] = index;
+        }
+        controller.registryIndices[slot] = -1;
+        return true;
+    }
+    
+    boolean contains(MultiblockController<?, ?, ?> controller) {
+        final int index = controller.registryIndices[slot];
+        // the index alone could be left over from a set that was cleared
+        return index >= 0 && index < elements.size() && elements.get(index) == controller;
+    }
+    
+    /**
+     * @return -1 if the controller isn't in the set
+     */
+    int indexOf(MultiblockController<?, ?, ?> controller) {
+        return contains(controller) ? controller.registryIndices[slot] : -1;
+    }
+    
+    MultiblockController<?, ?, ?> get(int index) {
+        return elements.get(index);
+    }
+    
+    int size() {
+        return elements.size();
+    }
+    
+    void clear() {
+        for (int i = 0; i < elements.size(); i++) {
+            elements.get(i).registryIndices[slot] = -1;
+        }
+        elements.clear();
+    }
+}
@@ -0,0 +1,81 @@
+package net.roguelogix.phosphophyllite.multiblock;
+
+import net.roguelogix.phosphophyllite.modular.api.ModulePlan;
+import net.roguelogix.phosphophyllite.util.NonnullDefault;
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+
+import javax.annotation.Nullable;
+import java.util.Objects;
+
+/**
+ * Immutable view of a controller as of the end of an update, safe to read from any thread without locking
+ * See {@link MultiblockController#snapshot()}
+ */
+@NonnullDefault
+public final class ControllerSnapshot {
+    
+    private final long tick;
+    private final int blockCount;
+    private final Vector3ic min;
+    private final Vector3ic max;
+    private final ModulePlan<?, ?> modulePlan;
+    private final Object[] summaries;
+    
+    ControllerSnapshot(long tick, int blockCount, Vector3ic min, Vector3ic max, ModulePlan<?, ?> modulePlan, Object[] summaries) {
+        this.tick = tick;
+        this.blockCount = blockCount;
+        this.min = new Vector3i(min);
+        this.max = new Vector3i(max);
+        this.modulePlan = modulePlan;
+        this.summaries = summaries;
+    }
+    
+    /**
+     * A new snapshot is only published when something in it changes, this is the tick that happened on
+     */
+    public long tick() {
+        return tick;
+    }
+    
+    public int blockCount() {
+        return blockCount;
+    }
+    
+    public Vector3ic min() {
+        return min;
+    }
+    
+    public Vector3ic max() {
+        return max;
+    }
+    
+    /**
+     * @return the summary published by the module for that interface, see {@link net.roguelogix.phosphophyllite.multiblock.modular.MultiblockControllerModule#snapshotSummary()}
+     * null if the controller doesn't have that module, it didn't publish one, or it isn't of the requested type
+     */
+    @Nullable
+    public <T> T summary(Class<?> moduleInterface, Class<T> summaryType) {
+        final int index = modulePlan.indexOf(moduleInterface);
+        if (index == -1) {
+            return null;
+        }
+        final var summary = summaries[index];
+        return summaryType.isInstance(summary) ? summaryType.cast(summary) : null;
+    }
+    
+    /**
+     * @return if the snapshot would be identical to this one, apart from its tick
+     */
+    boolean matches(int blockCount, Vector3ic min, Vector3ic max, Object[] summaries) {
+        if (this.blockCount != blockCount || !this.min.equals(min.x(), min.y(), min.z()) || !this.max.equals(max.x(), max.y(), max.z())) {
+            return false;
+        }
+        for (int i = 0; i < summaries.length; i++) {
+            if (!Objects.equals(this.summaries[i], summaries[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
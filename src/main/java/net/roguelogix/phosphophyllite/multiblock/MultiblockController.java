@@ -1,20 +1,23 @@
 package net.roguelogix.phosphophyllite.multiblock;
 
+import it.unimi.dsi.fastutil.HashCommon;
 import it.unimi.dsi.fastutil.objects.*;
-import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
+import net.minecraft.core.registries.BuiltInRegistries;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import net.roguelogix.phosphophyllite.Phosphophyllite;
 import net.roguelogix.phosphophyllite.debug.DebugInfo;
 import net.roguelogix.phosphophyllite.debug.IDebuggable;
+import net.roguelogix.phosphophyllite.modular.api.ModulePlan;
+import net.roguelogix.phosphophyllite.multiblock.ControllerModuleDispatch.Hook;
 import net.roguelogix.phosphophyllite.multiblock.modular.IModularMultiblockController;
 import net.roguelogix.phosphophyllite.multiblock.modular.MultiblockControllerModule;
 import net.roguelogix.phosphophyllite.multiblock.modular.MultiblockControllerModuleRegistry;
-import net.roguelogix.phosphophyllite.util.AStarList;
 import net.roguelogix.phosphophyllite.util.ModuleMap;
 import net.roguelogix.phosphophyllite.util.NonnullDefault;
+import net.roguelogix.phosphophyllite.util.SectionPositionIndex;
 import net.roguelogix.phosphophyllite.util.VectorUtil;
 import org.jetbrains.annotations.Contract;
 import org.joml.Vector3i;
@@ -23,10 +26,9 @@ import org.joml.Vector3ic;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 
-import static net.roguelogix.phosphophyllite.util.Util.DIRECTIONS;
-
 @NonnullDefault
 public class MultiblockController<
         TileType extends BlockEntity & IMultiblockTile<TileType, BlockType, ControllerType>,
@@ -36,66 +38,85 @@ public class MultiblockController<
     
     
     public final Level level;
+    // structural code goes through this instead of the level directly
+    public final MultiblockLevelAccess levelAccess;
     @SuppressWarnings("unchecked")
-    public final ModuleMap<MultiblockTileModule<TileType, BlockType, ControllerType>, TileType> blocks = new ModuleMap<MultiblockTileModule<TileType, BlockType, ControllerType>, TileType>(new MultiblockTileModule[0]);
+    // multiblocks are dense, so neighbor lookups are mostly an offset into the same section
+    public final ModuleMap<MultiblockTileModule<TileType, BlockType, ControllerType>, TileType> blocks = new ModuleMap<MultiblockTileModule<TileType, BlockType, ControllerType>, TileType>(new MultiblockTileModule[0], new SectionPositionIndex());
     
     public final Predicate<BlockEntity> tileTypeValidator;
     public final Predicate<Block> blockTypeValidator;
     
-    private boolean updateExtremes = true;
-    private final Vector3i minCoord = new Vector3i();
-    private final Vector3i maxCoord = new Vector3i();
-    private final Vector3i minExtremeBlocks = new Vector3i();
-    private final Vector3i maxExtremeBlocks = new Vector3i();
+    private static final AtomicInteger nextId = new AtomicInteger();
+    private final int id = nextId.getAndIncrement();
+    // XOR of every part's structure key
+    private long structureHash = 0;
     
     private long lastTick = -1;
     private long checkForDetachmentsAtTick = Long.MAX_VALUE;
     
-    private record Detachment(BlockPos pos, byte directions) {
-        Detachment(BlockPos pos, BlockEntity[] neighbors) {
-            this(pos, arrayToByte(neighbors));
+    // slot aligned with blocks
+    private final PartLayout layout = new PartLayout();
+    private final PartLayout.Parts parts = new PartLayout.Parts() {
+        @Override
+        public int indexOf(int x, int y, int z) {
+            return blocks.indexOf(x, y, z);
         }
         
-        public boolean linked(Direction direction) {
-            return (directions & (1 << direction.get3DDataValue())) != 0;
+        @Override
+        public long pos(int slot) {
+            return blocks.posElements()[slot];
         }
         
-        private static byte arrayToByte(BlockEntity[] neighbors) {
-            byte directions = 0;
-            for (int i = 0; i < neighbors.length; i++) {
-                if (neighbors[i] != null) {
-                    directions |= 1 << i;
-                }
-            }
-            return directions;
+        @Override
+        public boolean connects(int slot, int neighborSlot, Direction direction) {
+            final var moduleElements = blocks.moduleElements();
+            return moduleElements[slot].shouldConnectTo(moduleElements[neighborSlot].iface, direction);
         }
-    }
-    
-    protected final List<Detachment> removedBlocks = new LinkedList<>();
+    };
     
     @Nullable
     private MultiblockController<TileType, BlockType, ControllerType> mergedInto = null;
     protected final Set<MultiblockController<TileType, BlockType, ControllerType>> controllersToMerge = new ObjectOpenHashSet<>();
     
+    private final boolean threadSafeUpdate;
+    private boolean updatingOffThread = false;
+    // thrown from an off thread update, rethrown on the server thread once the level's parallel updates are done
+    @Nullable
+    private RuntimeException offThreadUpdateCrash;
+    // owned by MultiblockRegistry
+    boolean asleep = false;
+    final int[] registryIndices = {-1, -1};
+    private final ObjectArrayList<Runnable> deferredServerThreadWork = new ObjectArrayList<>();
+    private final ControllerModuleDispatch<TileType, BlockType, ControllerType> moduleDispatch;
+    private final Object[] snapshotSummaries;
+    private volatile ControllerSnapshot snapshot;
+    
     public MultiblockController(Level level, Class<TileType> tileType, Class<BlockType> blockType) {
         this.level = level;
+        this.levelAccess = MultiblockLevelAccess.of(level);
         this.tileTypeValidator = tileType::isInstance;
         this.blockTypeValidator = blockType::isInstance;
         MultiblockRegistry.addController(this);
         
-        final var moduleList = new ArrayList<MultiblockControllerModule<TileType, BlockType, ControllerType>>();
+        modulePlan = MultiblockControllerModuleRegistry.plan(this.getClass());
+        final var moduleList = new ArrayList<MultiblockControllerModule<TileType, BlockType, ControllerType>>(modulePlan.size());
         moduleListRO = Collections.unmodifiableList(moduleList);
         
-        final Class<?> thisClazz = this.getClass();
-        MultiblockControllerModuleRegistry.forEach((clazz, constructor) -> {
-            if (clazz.isAssignableFrom(thisClazz)) {
-                //noinspection unchecked
-                var module = (MultiblockControllerModule<TileType, BlockType, ControllerType>) constructor.apply(this);
-                modules.put(clazz, module);
-                moduleList.add(module);
-            }
-        });
+        for (int i = 0; i < modulePlan.size(); i++) {
+            //noinspection unchecked
+            moduleList.add((MultiblockControllerModule<TileType, BlockType, ControllerType>) modulePlan.construct(i, this));
+        }
         moduleListRO.forEach(MultiblockControllerModule::postModuleConstruction);
+        moduleDispatch = new ControllerModuleDispatch<>(moduleListRO);
+        snapshotSummaries = new Object[moduleListRO.size()];
+        snapshot = new ControllerSnapshot(Phosphophyllite.tickNumber(), 0, layout.min(), layout.max(), modulePlan, new Object[moduleListRO.size()]);
+        
+        boolean threadSafeUpdate = true;
+        for (final var module : moduleListRO) {
+            threadSafeUpdate &= module.threadSafeUpdate();
+        }
+        this.threadSafeUpdate = threadSafeUpdate;
     }
     
     ControllerType self() {
@@ -104,20 +125,25 @@ public class MultiblockController<
     }
     
     public final Vector3ic min() {
-        return minCoord;
+        return layout.min();
     }
     
     public final Vector3ic max() {
-        return maxCoord;
+        return layout.max();
     }
     
-    private final Reference2ReferenceArrayMap<Class<?>, MultiblockControllerModule<TileType, BlockType, ControllerType>> modules = new Reference2ReferenceArrayMap<>();
+    // shared per class, maps module interfaces to indices in moduleListRO
+    private final ModulePlan<IModularMultiblockController<?, ?, ?>, MultiblockControllerModule<?, ?, ?>> modulePlan;
     private final List<MultiblockControllerModule<TileType, BlockType, ControllerType>> moduleListRO;
     
     @Override
     @Nullable
     public MultiblockControllerModule<TileType, BlockType, ControllerType> module(Class<?> interfaceClazz) {
-        return modules.get(interfaceClazz);
+        final int index = modulePlan.indexOf(interfaceClazz);
+        if (index == -1) {
+            return null;
+        }
+        return moduleListRO.get(index);
     }
     
     @Override
@@ -160,15 +186,18 @@ public class MultiblockController<
         var toAttachModule = (MultiblockTileModule<TileType, BlockType, ControllerType>) toAttachGeneric;
         var toAttachTile = toAttachModule.iface;
         
-        for (final var module : modules()) {
+        for (final var module : moduleDispatch.modules(Hook.CAN_ATTACH_PART)) {
             if (!module.canAttachPart(toAttachTile)) {
                 return;
             }
         }
         
+        wake();
+        
         if (toAttachModule.controller() != null && toAttachModule.controller() != this) {
             if (toAttachModule.controller().blocks.size() > blocks.size()) {
                 toAttachModule.controller().controllersToMerge.add(self());
+                toAttachModule.controller().wake();
             } else {
                 controllersToMerge.add(toAttachModule.controller());
             }
@@ -182,203 +211,132 @@ public class MultiblockController<
         
         toAttachModule.controller(self());
         
+        final var replacedModule = blocks.getModule(toAttachTile.getBlockPos());
         if (!blocks.addModule(toAttachModule)) {
             // weird edge case that happened, clearing merged controller's lists of blocks fixed this, but just in case
             return;
         }
-        
-        BlockPos toAttachPos = toAttachTile.getBlockPos();
-        // update minmax
-        if (toAttachPos.getX() < minCoord.x) {
-            minCoord.x = toAttachPos.getX();
-            minExtremeBlocks.x = 1;
-        } else if (toAttachPos.getX() == minCoord.x) {
-            minExtremeBlocks.x++;
-        }
-        if (toAttachPos.getY() < minCoord.y) {
-            minCoord.y = toAttachPos.getY();
-            minExtremeBlocks.y = 1;
-        } else if (toAttachPos.getY() == minCoord.y) {
-            minExtremeBlocks.y++;
-        }
-        if (toAttachPos.getZ() < minCoord.z) {
-            minCoord.z = toAttachPos.getZ();
-            minExtremeBlocks.z = 1;
-        } else if (toAttachPos.getZ() == minCoord.z) {
-            minExtremeBlocks.z++;
-        }
-        if (toAttachPos.getX() > maxCoord.x) {
-            maxCoord.x = toAttachPos.getX();
-            maxExtremeBlocks.x = 1;
-        } else if (toAttachPos.getX() == maxCoord.x) {
-            maxExtremeBlocks.x++;
-        }
-        if (toAttachPos.getY() > maxCoord.y) {
-            maxCoord.y = toAttachPos.getY();
-            maxExtremeBlocks.y = 1;
-        } else if (toAttachPos.getY() == maxCoord.y) {
-            maxExtremeBlocks.y++;
-        }
-        if (toAttachPos.getZ() > maxCoord.z) {
-            maxCoord.z = toAttachPos.getZ();
-            maxExtremeBlocks.z = 1;
-        } else if (toAttachPos.getZ() == maxCoord.z) {
-            maxExtremeBlocks.z++;
+        if (replacedModule != null) {
+            structureHash ^= structureKey(replacedModule.iface);
         }
+        structureHash ^= structureKey(toAttachTile);
+        
+        layout.attached(parts, blocks.indexOf(toAttachModule));
+        journal(StructureJournal.Event.ATTACH, toAttachTile.getBlockPos().asLong());
         
-        for (var module : modules()) {
+        for (var module : moduleDispatch.modules(Hook.ON_PART_ADDED)) {
             module.onPartAdded(toAttachTile);
         }
         onPartAdded(toAttachTile);
         if (merging) {
-            for (var module : modules()) {
+            for (var module : moduleDispatch.modules(Hook.ON_PART_ATTACHED)) {
                 module.onPartAttached(toAttachTile);
             }
             onPartAttached(toAttachTile);
         } else if (toAttachModule.preExistingBlock) {
-            for (var module : modules()) {
+            for (var module : moduleDispatch.modules(Hook.ON_PART_LOADED)) {
                 module.onPartLoaded(toAttachTile);
             }
             onPartLoaded(toAttachTile);
         } else {
-            for (var module : modules()) {
+            for (var module : moduleDispatch.modules(Hook.ON_PART_PLACED)) {
                 module.onPartPlaced(toAttachTile);
             }
             onPartPlaced(toAttachTile);
         }
-        
-        toAttachModule.updateNeighbors();
+    }
+    
+    /**
+     * Removes from blocks and the layout together, so they stay slot aligned
+     */
+    private boolean removeModule(MultiblockTileModule<TileType, BlockType, ControllerType> module) {
+        final int slot = blocks.indexOf(module);
+        if (slot == -1) {
+            return false;
+        }
+        layout.removeSlot(slot);
+        blocks.removeModule(module);
+        structureHash ^= structureKey(module.iface);
+        return true;
+    }
+    
+    /**
+     * Keyed by position and block, not block state, so assembled state properties don't change it
+     * Block registry names are used instead of ids, ids aren't stable across sessions
+     */
+    private static long structureKey(BlockEntity tile) {
+        final long blockKey = BuiltInRegistries.BLOCK.getKey(tile.getBlockState().getBlock()).hashCode();
+        return HashCommon.murmurHash3(HashCommon.murmurHash3(tile.getBlockPos().asLong()) ^ blockKey);
+    }
+    
+    /**
+     * Order independent hash of the parts in this controller, by position and block
+     * Matches between two controllers with the same parts, regardless of how they were assembled
+     */
+    public final long structureHash() {
+        return structureHash;
+    }
+    
+    @Nullable
+    MultiblockTileModule<TileType, BlockType, ControllerType> neighbor(MultiblockTileModule<TileType, BlockType, ControllerType> module, Direction direction) {
+        final int slot = blocks.indexOf(module);
+        if (slot == -1) {
+            return null;
+        }
+        final int neighborSlot = layout.graph.neighbor(slot, direction.get3DDataValue());
+        if (neighborSlot == -1) {
+            return null;
+        }
+        return blocks.moduleElements()[neighborSlot];
     }
     
     public void detach(@Nonnull MultiblockTileModule<TileType, BlockType, ControllerType> toDetachModule, boolean chunkUnload, boolean merging, boolean checkForDetachments) {
         
-        if (!blocks.removeModule(toDetachModule)) {
+        if (!removeModule(toDetachModule)) {
             return;
         }
         
+        wake();
+        
         final var toDetachTile = toDetachModule.iface;
         
         if (merging) {
-            for (var module : modules()) {
+            for (var module : moduleDispatch.modules(Hook.ON_PART_DETACHED)) {
                 module.onPartDetached(toDetachTile);
             }
             onPartDetached(toDetachTile);
         } else if (chunkUnload) {
-            for (var module : modules()) {
+            for (var module : moduleDispatch.modules(Hook.ON_PART_UNLOADED)) {
                 module.onPartUnloaded(toDetachTile);
             }
             onPartUnloaded(toDetachTile);
         } else {
-            for (var module : modules()) {
+            for (var module : moduleDispatch.modules(Hook.ON_PART_BROKEN)) {
                 module.onPartBroken(toDetachTile);
             }
             onPartBroken(toDetachTile);
         }
-        for (var module : modules()) {
+        for (var module : moduleDispatch.modules(Hook.ON_PART_REMOVED)) {
             module.onPartRemoved(toDetachTile);
         }
         onPartRemoved(toDetachTile);
         
-        BlockPos toDetachPos = toDetachTile.getBlockPos();
-        if (toDetachPos.getX() == minCoord.x) {
-            minExtremeBlocks.x--;
-            if (minExtremeBlocks.x == 0) {
-                updateExtremes = true;
-            }
-        }
-        if (toDetachPos.getY() == minCoord.y) {
-            minExtremeBlocks.y--;
-            if (minExtremeBlocks.y == 0) {
-                updateExtremes = true;
-            }
-        }
-        if (toDetachPos.getZ() == minCoord.z) {
-            minExtremeBlocks.z--;
-            if (minExtremeBlocks.z == 0) {
-                updateExtremes = true;
-            }
-        }
-        if (toDetachPos.getX() == maxCoord.x) {
-            maxExtremeBlocks.x--;
-            if (maxExtremeBlocks.x == 0) {
-                updateExtremes = true;
-            }
-        }
-        if (toDetachPos.getY() == maxCoord.y) {
-            maxExtremeBlocks.y--;
-            if (maxExtremeBlocks.y == 0) {
-                updateExtremes = true;
-            }
-        }
-        if (toDetachPos.getZ() == maxCoord.z) {
-            maxExtremeBlocks.z--;
-            if (maxExtremeBlocks.z == 0) {
-                updateExtremes = true;
-            }
-        }
+        final long toDetachPos = toDetachTile.getBlockPos().asLong();
+        layout.removeFromBounds(toDetachPos);
+        journal(merging ? StructureJournal.Event.DETACH_MERGED : chunkUnload ? StructureJournal.Event.DETACH_UNLOADED : StructureJournal.Event.DETACH_BROKEN, toDetachPos);
         
         if (checkForDetachments) {
-            this.checkForDetachmentsAtTick = Phosphophyllite.tickNumber() + 2;
-            if (!chunkUnload) {
-                this.checkForDetachmentsAtTick = Long.MIN_VALUE;
+            if (chunkUnload) {
+                this.checkForDetachmentsAtTick = Phosphophyllite.tickNumber() + 2;
+            } else {
+                // breaks coalesce, the first one opens the window and later ones within it don't push it back
+                this.checkForDetachmentsAtTick = Math.min(checkForDetachmentsAtTick, Phosphophyllite.tickNumber() + Phosphophyllite.CONFIG.multiblock.detachmentWindowTicks);
             }
-            removedBlocks.add(new Detachment(toDetachPos, toDetachModule.neighborTiles));
         }
         
-        if (!merging) {
-            toDetachModule.nullNeighbors();
-        }
         toDetachModule.controller(null);
     }
     
-    private void updateMinMaxCoordinates() {
-        if (blocks.isEmpty() || !updateExtremes) {
-            return;
-        }
-        updateExtremes = false;
-        minCoord.set(Integer.MAX_VALUE);
-        maxCoord.set(Integer.MIN_VALUE);
-        blocks.forEachPos(pos -> {
-            if (pos.getX() < minCoord.x) {
-                minCoord.x = pos.getX();
-                minExtremeBlocks.x = 1;
-            } else if (pos.getX() == minCoord.x) {
-                minExtremeBlocks.x++;
-            }
-            if (pos.getY() < minCoord.y) {
-                minCoord.y = pos.getY();
-                minExtremeBlocks.y = 1;
-            } else if (pos.getY() == minCoord.y) {
-                minExtremeBlocks.y++;
-            }
-            if (pos.getZ() < minCoord.z) {
-                minCoord.z = pos.getZ();
-                minExtremeBlocks.z = 1;
-            } else if (pos.getZ() == minCoord.z) {
-                minExtremeBlocks.z++;
-            }
-            if (pos.getX() > maxCoord.x) {
-                maxCoord.x = pos.getX();
-                maxExtremeBlocks.x = 1;
-            } else if (pos.getX() == maxCoord.x) {
-                maxExtremeBlocks.x++;
-            }
-            if (pos.getY() > maxCoord.y) {
-                maxCoord.y = pos.getY();
-                maxExtremeBlocks.y = 1;
-            } else if (pos.getY() == maxCoord.y) {
-                maxExtremeBlocks.y++;
-                
-            }
-            if (pos.getZ() > maxCoord.z) {
-                maxCoord.z = pos.getZ();
-                maxExtremeBlocks.z = 1;
-            } else if (pos.getZ() == maxCoord.z) {
-                maxExtremeBlocks.z++;
-            }
-        });
-    }
-    
     
     private void processDetachments() {
         if (checkForDetachmentsAtTick > Phosphophyllite.tickNumber()) {
@@ -387,86 +345,128 @@ public class MultiblockController<
         
         checkForDetachmentsAtTick = Long.MAX_VALUE;
         
-        AStarList<MultiblockTileModule<?, ?, ?>> aStarList = new AStarList<>(module -> module.iface.getBlockPos());
-        
-        BlockPos.MutableBlockPos mutableBlockPos = new BlockPos.MutableBlockPos();
-        for (Detachment removedBlock : removedBlocks) {
-            for (Direction value : DIRECTIONS) {
-                if (!removedBlock.linked(value)) {
-                    continue;
-                }
-                mutableBlockPos.set(removedBlock.pos);
-                mutableBlockPos.move(value);
-                final var module = blocks.getModule(mutableBlockPos);
-                if (module != null && module.controller() == this) {
-                    aStarList.addTarget(module);
-                }
-            }
-        }
-        removedBlocks.clear();
-        
-        while (!aStarList.done()) {
-            final var node = aStarList.nextNode();
-            for (int i = 0; i < 6; i++) {
-                node.lastSavedTick = this.lastTick;
-                var module = node.getNeighbor(DIRECTIONS[i]);
-                if (module != null && module.controller() == this && module.lastSavedTick != this.lastTick) {
-                    module.lastSavedTick = this.lastTick;
-                    aStarList.addNode(module);
-                }
-            }
-        }
-        
-        if (aStarList.foundAll()) {
+        // the largest component stays with this controller
+        final var componentGraphs = new ObjectArrayList<NeighborGraph>();
+        final var componentSlots = layout.splitComponents(componentGraphs);
+        if (componentSlots.isEmpty()) {
             return;
         }
         
-        ObjectOpenHashSet<MultiblockTileModule<TileType, BlockType, ControllerType>> toOrphan = new ObjectOpenHashSet<>();
-        blocks.forEachModule(module -> {
-            if (module.lastSavedTick != this.lastTick) {
-                toOrphan.add(module);
+        // slots shift as modules are removed, so every component is copied out before any are removed
+        final var moduleElements = blocks.moduleElements();
+        final var components = new ObjectArrayList<ObjectArrayList<MultiblockTileModule<TileType, BlockType, ControllerType>>>(componentSlots.size());
+        for (final var slots : componentSlots) {
+            final var component = new ObjectArrayList<MultiblockTileModule<TileType, BlockType, ControllerType>>(slots.size());
+            for (int i = 0; i < slots.size(); i++) {
+                component.add(moduleElements[slots.getInt(i)]);
             }
-        });
-        if (toOrphan.isEmpty()) {
-            return;
+            components.add(component);
         }
         
-        for (MultiblockTileModule<TileType, BlockType, ControllerType> tile : toOrphan) {
-            detach(tile, false, true, false);
-        }
         final var newMultiblocks = new ObjectArrayList<ControllerType>();
-        // TODO: move to A* because its likely that its split into two
-        final var tempModuleArrays = new ObjectArrayList<MultiblockTileModule<TileType, BlockType, ControllerType>>();
-        final var newMultiblockModules = new ObjectOpenHashSet<MultiblockTileModule<TileType, BlockType, ControllerType>>();
-        while (!toOrphan.isEmpty()) {
-            final var first = toOrphan.iterator().next();
-            tempModuleArrays.add(first);
-            toOrphan.remove(first);
-            while (!tempModuleArrays.isEmpty()) {
-                final var popped = tempModuleArrays.pop();
-                newMultiblockModules.add(popped);
-                toOrphan.remove(popped);
-                for (final var neighbor : popped.neighbors) {
-                    if (neighbor == null || newMultiblockModules.contains(neighbor)) {
-                        continue;
-                    }
-                    tempModuleArrays.add(neighbor);
-                }
+        for (int i = 0; i < components.size(); i++) {
+            final var component = components.get(i);
+            final var tiles = new ObjectArrayList<TileType>(component.size());
+            for (final var module : component) {
+                tiles.add(module.iface);
+                layout.removeFromBounds(module.iface.getBlockPos().asLong());
+                removeModule(module);
             }
-            var newController = first.iface.createController();
-            for (final var newMultiblockModule : newMultiblockModules) {
-                newController.attemptAttach(newMultiblockModule, true);
+            for (var module : moduleDispatch.modules(Hook.ON_PARTS_DETACHED)) {
+                module.onPartsDetached(tiles);
             }
-            newMultiblockModules.clear();
-            newMultiblocks.add(newController);
+            onPartsDetached(tiles);
+            
+            final MultiblockController<TileType, BlockType, ControllerType> newController = component.get(0).iface.createController();
+            if (newController.moduleDispatch.modules(Hook.CAN_ATTACH_PART).length == 0) {
+                newController.attachComponent(component, tiles, componentGraphs.get(i));
+            } else {
+                // canAttachPart can depend on the parts already attached, so those controllers get them one at a time
+                // components are in tree order, so every module attaches next to one already attached
+                for (final var module : component) {
+                    module.controller(null);
+                    newController.attemptAttach(module, true);
+                }
+            }
+            journal(StructureJournal.Event.SPLIT_OFF, newController.id);
+            newMultiblocks.add(newController.self());
         }
         
-        for (final var module : modules()) {
+        for (final var module : moduleDispatch.modules(Hook.SPLIT)) {
             module.split(newMultiblocks);
         }
         split(newMultiblocks);
     }
     
+    /**
+     * Bulk attach for a connected group of modules split off from another controller of the same type
+     * Neighbor links and the connectivity tree between them are kept as is, and modules get a single batched callback
+     * Skips canAttachPart, only for controllers without modules that override it
+     *
+     * @param componentGraph: links of the component, slot aligned with it
+     */
+    private void attachComponent(ObjectArrayList<MultiblockTileModule<TileType, BlockType, ControllerType>> component, List<TileType> tiles, NeighborGraph componentGraph) {
+        final int base = blocks.size();
+        blocks.addModules(component);
+        layout.attachComponent(parts, base, componentGraph);
+        for (final var module : component) {
+            module.controller(self());
+            structureHash ^= structureKey(module.iface);
+        }
+        for (var module : moduleDispatch.modules(Hook.ON_PARTS_ATTACHED)) {
+            module.onPartsAttached(tiles);
+        }
+        onPartsAttached(tiles);
+    }
+    
+    private boolean canBulkMerge(MultiblockController<TileType, BlockType, ControllerType> otherController) {
+        final int size = otherController.blocks.size();
+        final TileType[] otherTiles = otherController.blocks.tileElements();
+        for (int i = 0; i < size; i++) {
+            if (blocks.containsTile(otherTiles[i])) {
+                // overlapping positions would knock the neighbor graph out of line with blocks
+                return false;
+            }
+        }
+        // canAttachPart can depend on the parts attached before it, only the per-part path asks in order
+        return moduleDispatch.modules(Hook.CAN_ATTACH_PART).length == 0;
+    }
+    
+    /**
+     * Appends the other controller's blocks onto ours, keeping the links and connectivity trees it already has
+     * Only the other controller's blocks are walked, to link across the seam between the two
+     */
+    private void bulkMerge(MultiblockController<TileType, BlockType, ControllerType> otherController) {
+        final int size = otherController.blocks.size();
+        final var otherModules = otherController.blocks.moduleElements();
+        final var tiles = new ObjectArrayList<TileType>(size);
+        for (int i = 0; i < size; i++) {
+            tiles.add(otherModules[i].iface);
+        }
+        for (var module : otherController.moduleDispatch.modules(Hook.ON_PARTS_DETACHED)) {
+            module.onPartsDetached(tiles);
+        }
+        otherController.onPartsDetached(tiles);
+        
+        final int base = blocks.size();
+        blocks.addAll(otherController.blocks);
+        // canBulkMerge ruled out overlapping positions
+        structureHash ^= otherController.structureHash;
+        for (int i = 0; i < size; i++) {
+            final var module = otherModules[i];
+            module.controller(self());
+            module.preExistingBlock = true;
+        }
+        // links across the seam are asked of the merged modules, so they already have to be ours
+        layout.merge(otherController.layout, parts, base);
+        checkForDetachmentsAtTick = Math.min(checkForDetachmentsAtTick, otherController.checkForDetachmentsAtTick);
+        
+        for (var module : moduleDispatch.modules(Hook.ON_PARTS_ATTACHED)) {
+            module.onPartsAttached(tiles);
+        }
+        onPartsAttached(tiles);
+    }
+    
     private void processMerges() {
         while (!controllersToMerge.isEmpty()) {
             ObjectOpenHashSet<MultiblockController<TileType, BlockType, ControllerType>> newToMerge = new ObjectOpenHashSet<>();
@@ -485,20 +485,28 @@ public class MultiblockController<
                 if (otherController.blocks.size() == 0) {
                     continue;
                 }
-                for (var module : modules()) {
+                for (var module : moduleDispatch.modules(Hook.MERGE)) {
                     module.merge(otherCased);
                 }
                 this.merge(otherCased);
-                final var otherElements = otherController.blocks.moduleElements().clone();
-                final var size = otherController.blocks.size();
-                for (int i = 0; i < size; i++) {
-                    final var module = otherElements[i];
-                    otherController.detach(module, false, true, false);
-                    module.controller(null);
-                    module.preExistingBlock = true;
-                    attemptAttach(module, true);
+                if (canBulkMerge(otherController)) {
+                    bulkMerge(otherController);
+                } else {
+                    otherController.layout.graph.detachAll();
+                    final var otherElements = otherController.blocks.moduleElements().clone();
+                    final var size = otherController.blocks.size();
+                    for (int i = 0; i < size; i++) {
+                        final var module = otherElements[i];
+                        otherController.detach(module, false, true, false);
+                        module.controller(null);
+                        module.preExistingBlock = true;
+                        attemptAttach(module, true);
+                    }
                 }
                 otherController.blocks.clear();
+                otherController.layout.graph.clear();
+                otherController.structureHash = 0;
+                journal(StructureJournal.Event.MERGED_IN, otherController.id);
                 otherController.mergedInto = this;
             }
             controllersToMerge.clear();
@@ -517,23 +525,188 @@ public class MultiblockController<
     }
     
     public final void update() {
-        if (lastTick >= Phosphophyllite.tickNumber()) {
+        if (!beginUpdate()) {
             return;
         }
+        structuralUpdate();
+        moduleUpdate();
+    }
+    
+    /**
+     * Server thread only
+     *
+     * @return if the controller should be updated this tick
+     */
+    final boolean beginUpdate() {
+        if (lastTick >= Phosphophyllite.tickNumber()) {
+            return false;
+        }
         lastTick = Phosphophyllite.tickNumber();
         
         if (blocks.isEmpty()) {
             // why are we being ticked?
             MultiblockRegistry.removeController(this);
             checkForDetachmentsAtTick = Long.MAX_VALUE;
-            return;
+            return false;
         }
-        
+        return true;
+    }
+    
+    /**
+     * Server thread only, handles detachments, merges, and module pre-updates
+     * Skipped for a tick if the level is over its structural time budget and {@link #structuralWorkPending()}, the controller is left as it was and picks up the work next tick
+     */
+    final void structuralUpdate() {
         processDetachments();
         processMerges();
-        updateMinMaxCoordinates();
-        modules().forEach(MultiblockControllerModule::update);
-        
+        for (final var module : moduleDispatch.modules(Hook.PRE_UPDATE)) {
+            module.preUpdate();
+        }
+    }
+    
+    /**
+     * May be called off the server thread if {@link #threadSafeUpdate()}, see {@link MultiblockControllerModule#threadSafeUpdate()}
+     */
+    final void moduleUpdate() {
+        // can be merged into another controller after our structural update ran
+        if (blocks.isEmpty() || mergedInto != null) {
+            publishSnapshot();
+            return;
+        }
+        for (final var module : moduleDispatch.modules(Hook.UPDATE)) {
+            module.update();
+        }
+        publishSnapshot();
+    }
+    
+    private void publishSnapshot() {
+        for (int i = 0; i < snapshotSummaries.length; i++) {
+            snapshotSummaries[i] = moduleListRO.get(i).snapshotSummary();
+        }
+        if (snapshot.matches(blocks.size(), layout.min(), layout.max(), snapshotSummaries)) {
+            return;
+        }
+        snapshot = new ControllerSnapshot(Phosphophyllite.tickNumber(), blocks.size(), layout.min(), layout.max(), modulePlan, snapshotSummaries.clone());
+    }
+    
+    /**
+     * Unique for the session, used to tell controllers apart in the {@link StructureJournal}
+     */
+    public final int id() {
+        return id;
+    }
+    
+    /**
+     * Records to the level's {@link StructureJournal}, see {@link StructureJournal.Event} for what the data is
+     */
+    public final void journal(StructureJournal.Event event, long data) {
+        StructureJournal.of(level).record(Phosphophyllite.tickNumber(), id, event, data);
+    }
+    
+    /**
+     * State of the controller as of the end of its last update, may be read from any thread
+     * Only replaced when something in it changes, a parked controller keeps its last one
+     */
+    public final ControllerSnapshot snapshot() {
+        return snapshot;
+    }
+    
+    /**
+     * Puts a parked controller back into the tick list, see {@link MultiblockControllerModule#canSleep()}
+     * Attaching, detaching, and merge requests wake the controller on their own
+     * Server thread only
+     */
+    public final void wake() {
+        if (!asleep) {
+            return;
+        }
+        asleep = false;
+        MultiblockRegistry.wakeController(this);
+    }
+    
+    /**
+     * @return if nothing is pending and every module is fine being parked until {@link #wake()}
+     */
+    final boolean canSleep() {
+        if (blocks.isEmpty() || checkForDetachmentsAtTick != Long.MAX_VALUE || !controllersToMerge.isEmpty()) {
+            return false;
+        }
+        for (final var module : modules()) {
+            if (!module.canSleep()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public final boolean threadSafeUpdate() {
+        return threadSafeUpdate;
+    }
+    
+    /**
+     * Server thread only
+     *
+     * @return if a split check, merge, or module pre-update is due, the structural work that the level's time budget can defer
+     */
+    final boolean structuralWorkPending() {
+        if (checkForDetachmentsAtTick <= Phosphophyllite.tickNumber() || !controllersToMerge.isEmpty()) {
+            return true;
+        }
+        for (final var module : moduleDispatch.modules(Hook.STRUCTURAL_WORK_PENDING)) {
+            if (module.structuralWorkPending()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * If blocks were removed and the check for whether that split the structure hasn't run yet, see multiblock.detachmentWindowTicks
+     */
+    public final boolean detachmentCheckPending() {
+        return checkForDetachmentsAtTick != Long.MAX_VALUE;
+    }
+    
+    final void beginOffThreadUpdate() {
+        updatingOffThread = true;
+    }
+    
+    /**
+     * {@link #moduleUpdate()} for a worker thread, the work queue would only log what it throws
+     */
+    final void offThreadModuleUpdate() {
+        try {
+            moduleUpdate();
+        } catch (RuntimeException e) {
+            offThreadUpdateCrash = e;
+        }
+    }
+    
+    /**
+     * @return what the off thread update threw, if anything, for the server thread to rethrow
+     */
+    @Nullable
+    final RuntimeException endOffThreadUpdate() {
+        updatingOffThread = false;
+        for (int i = 0; i < deferredServerThreadWork.size(); i++) {
+            deferredServerThreadWork.get(i).run();
+        }
+        deferredServerThreadWork.clear();
+        final var crash = offThreadUpdateCrash;
+        offThreadUpdateCrash = null;
+        return crash;
+    }
+    
+    /**
+     * Runs immediately when called from a normal server thread update
+     * When this controller is being updated off thread the runnable is deferred until all parallel updates for the level have finished
+     */
+    public final void runOnServerThread(Runnable runnable) {
+        if (updatingOffThread) {
+            deferredServerThreadWork.add(runnable);
+            return;
+        }
+        runnable.run();
     }
     
     @Nullable
@@ -548,13 +721,16 @@ public class MultiblockController<
         debugInfo.add("Controller class: " + this.getClass().getCanonicalName().substring(this.getClass().getPackageName().length() + 1));
         debugInfo.add("Controller hash:  " + Integer.toHexString(hashCode()));
         debugInfo.add("BlockCount: " + blocks.size());
-        debugInfo.add("Min: " + VectorUtil.asString(minCoord));
-        debugInfo.add("Max: " + VectorUtil.asString(maxCoord));
-        debugInfo.add("Size: " + VectorUtil.asString(new Vector3i(1, 1, 1).add(maxCoord).sub(minCoord)));
-        for (final var moduleEntry : modules.entrySet()) {
-            final var moduleDebugInfo = moduleEntry.getValue().getDebugInfo();
+        debugInfo.add("Min: " + VectorUtil.asString(layout.min()));
+        debugInfo.add("Max: " + VectorUtil.asString(layout.max()));
+        debugInfo.add("Size: " + VectorUtil.asString(new Vector3i(1, 1, 1).add(layout.max()).sub(layout.min())));
+        debugInfo.add("Asleep: " + asleep);
+        final var registryStats = MultiblockRegistry.stats(level);
+        debugInfo.add("Registry: " + registryStats.controllers() + " controllers, " + registryStats.tickingControllers() + " ticking, " + registryStats.addedLastTick() + " added, " + registryStats.removedLastTick() + " removed last tick");
+        for (int i = 0; i < moduleListRO.size(); i++) {
+            final var moduleDebugInfo = moduleListRO.get(i).getDebugInfo();
             if (moduleDebugInfo == null) {
-                debugInfo.add(new DebugInfo(moduleEntry.getKey().getSimpleName()));
+                debugInfo.add(new DebugInfo(modulePlan.moduleInterface(i).getSimpleName()));
                 continue;
             }
             debugInfo.add(moduleDebugInfo);
@@ -589,6 +765,28 @@ public class MultiblockController<
     protected void onPartBroken(@Nonnull TileType tile) {
     }
     
+    /**
+     * Batched form of {@link #onPartAdded} followed by {@link #onPartAttached} for each tile, used when a group of parts moves between controllers at once
+     */
+    protected void onPartsAttached(List<TileType> tiles) {
+        for (int i = 0; i < tiles.size(); i++) {
+            final var tile = tiles.get(i);
+            onPartAdded(tile);
+            onPartAttached(tile);
+        }
+    }
+    
+    /**
+     * Batched form of {@link #onPartDetached} followed by {@link #onPartRemoved} for each tile, used when a group of parts moves between controllers at once
+     */
+    protected void onPartsDetached(List<TileType> tiles) {
+        for (int i = 0; i < tiles.size(); i++) {
+            final var tile = tiles.get(i);
+            onPartDetached(tile);
+            onPartRemoved(tile);
+        }
+    }
+    
     protected void merge(ControllerType other) {
     }
     
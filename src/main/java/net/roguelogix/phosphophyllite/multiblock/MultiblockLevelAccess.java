@@ -0,0 +1,126 @@
+package net.roguelogix.phosphophyllite.multiblock;
+
+import cpw.mods.modlauncher.api.LamdbaExceptionUtils;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.ChunkStatus;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.roguelogix.phosphophyllite.util.NonnullDefault;
+import net.roguelogix.phosphophyllite.util.Util;
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+
+import javax.annotation.Nullable;
+
+/**
+ * The level access multiblock structural code (validation, assembly block states) goes through
+ * Kept narrow so it can be backed by something other than a live level, the jmh source set has an in memory one for benchmarking without a server
+ */
+@NonnullDefault
+public interface MultiblockLevelAccess {
+    
+    static MultiblockLevelAccess of(Level level) {
+        return new LevelBacked(level);
+    }
+    
+    /**
+     * @return null if there is no tile there, or the chunk isn't loaded
+     */
+    @Nullable
+    BlockEntity getTile(BlockPos pos);
+    
+    BlockState getBlockState(BlockPos pos);
+    
+    /**
+     * Walks the box a chunk section at a time, bounds are inclusive
+     * Unloaded chunks and empty sections read as air, the Vector3i passed to the consumer is reused
+     */
+    <T extends Exception> void forEachBlockState(Vector3ic min, Vector3ic max, LamdbaExceptionUtils.BiConsumer_WithExceptions<BlockState, Vector3i, T> consumer) throws T;
+    
+    /**
+     * Copy of a chunk section's block states, safe to read from any thread once returned
+     * Takes section coordinates, not block coordinates
+     *
+     * @return null if the chunk isn't loaded or the section is empty, both read as air
+     */
+    @Nullable
+    default PalettedContainer<BlockState> copySection(int sectionX, int sectionY, int sectionZ) {
+        final var states = new PalettedContainer<>(Block.BLOCK_STATE_REGISTRY, Blocks.AIR.defaultBlockState(), PalettedContainer.Strategy.SECTION_STATES);
+        final var min = new Vector3i(sectionX << 4, sectionY << 4, sectionZ << 4);
+        final var max = new Vector3i(min).add(15, 15, 15);
+        forEachBlockState(min, max, (state, pos) -> states.set(pos.x & 15, pos.y & 15, pos.z & 15, state));
+        return states;
+    }
+    
+    /**
+     * A chunk section's block states as they are in the level, not a copy, only read it on the server thread
+     * Takes section coordinates, not block coordinates
+     *
+     * @return null if the chunk isn't loaded or the section is empty, both read as air
+     */
+    @Nullable
+    default PalettedContainer<BlockState> section(int sectionX, int sectionY, int sectionZ) {
+        return copySection(sectionX, sectionY, sectionZ);
+    }
+    
+    /**
+     * Sets block states directly in their chunk sections, without neighbor updates
+     */
+    void setBlockStates(Long2ObjectMap<BlockState> newStates);
+    
+    record LevelBacked(Level level) implements MultiblockLevelAccess {
+        
+        @Nullable
+        @Override
+        public BlockEntity getTile(BlockPos pos) {
+            return Util.getTile(level, pos);
+        }
+        
+        @Override
+        public BlockState getBlockState(BlockPos pos) {
+            return level.getBlockState(pos);
+        }
+        
+        @Override
+        public <T extends Exception> void forEachBlockState(Vector3ic min, Vector3ic max, LamdbaExceptionUtils.BiConsumer_WithExceptions<BlockState, Vector3i, T> consumer) throws T {
+            Util.chunkCachedBlockStateIteration(min, max, level, consumer);
+        }
+        
+        @Nullable
+        @Override
+        public PalettedContainer<BlockState> copySection(int sectionX, int sectionY, int sectionZ) {
+            final var states = section(sectionX, sectionY, sectionZ);
+            return states == null ? null : states.copy();
+        }
+        
+        @Nullable
+        @Override
+        public PalettedContainer<BlockState> section(int sectionX, int sectionY, int sectionZ) {
+            final var chunk = (LevelChunk) level.getChunk(sectionX, sectionZ, ChunkStatus.FULL, false);
+            if (chunk == null) {
+                return null;
+            }
+            final int sectionIndex = sectionY - chunk.getMinSection();
+            final var sections = chunk.getSections();
+            if (sectionIndex < 0 || sectionIndex >= sections.length) {
+                return null;
+            }
+            final var section = sections[sectionIndex];
+            if (section == null || section.hasOnlyAir()) {
+                return null;
+            }
+            return section.getStates();
+        }
+        
+        @Override
+        public void setBlockStates(Long2ObjectMap<BlockState> newStates) {
+            Util.setBlockStates(newStates, level);
+        }
+    }
+}
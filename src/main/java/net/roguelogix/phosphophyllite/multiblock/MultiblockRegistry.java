@@ -3,21 +3,62 @@ package net.roguelogix.phosphophyllite.multiblock;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.Level;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.event.level.LevelEvent;
 import net.minecraftforge.event.server.ServerStoppedEvent;
 import net.minecraftforge.eventbus.api.EventPriority;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.roguelogix.phosphophyllite.Phosphophyllite;
 import net.roguelogix.phosphophyllite.multiblock.validated.IValidatedMultiblock;
 import net.roguelogix.phosphophyllite.registry.OnModLoad;
+import net.roguelogix.phosphophyllite.threading.Event;
+import net.roguelogix.phosphophyllite.threading.Queues;
 import net.roguelogix.phosphophyllite.util.Util;
 
+import javax.annotation.Nullable;
+
 public final class MultiblockRegistry {
     
-    private static final Object2ObjectOpenHashMap<ServerLevel, ObjectArrayList<MultiblockController<?, ?, ?>>> controllersToTick = new Object2ObjectOpenHashMap<>();
+    /**
+     * Registry churn for a single level
+     *
+     * @param controllers: controllers registered in the level
+     * @param tickingControllers: controllers that aren't asleep
+     * @param addedLastTick: controllers registered during the last full tick
+     * @param removedLastTick: controllers removed during the last full tick
+     */
+    public record LevelStats(int controllers, int tickingControllers, int addedLastTick, int removedLastTick) {
+        public static final LevelStats EMPTY = new LevelStats(0, 0, 0, 0);
+    }
+    
+    private static final class LevelControllers {
+        private final ControllerSet controllers = new ControllerSet(ControllerSet.REGISTERED);
+        // subset of controllers that aren't asleep
+        private final ControllerSet controllersToTick = new ControllerSet(ControllerSet.TICKING);
+        // first controller whose structural work didn't fit in the time budget last tick
+        @Nullable
+        private MultiblockController<?, ?, ?> resumeFrom;
+        private int added;
+        private int removed;
+        private LevelStats stats = LevelStats.EMPTY;
+        
+        private void rollStats() {
+            stats = new LevelStats(controllers.size(), controllersToTick.size(), added, removed);
+            added = 0;
+            removed = 0;
+        }
+    }
+    
+    private static final Object2ObjectOpenHashMap<ServerLevel, LevelControllers> levels = new Object2ObjectOpenHashMap<>();
     private static final ObjectArrayList<MultiblockController<?, ?, ?>> newControllers = new ObjectArrayList<>();
     private static final ObjectArrayList<MultiblockController<?, ?, ?>> oldControllers = new ObjectArrayList<>();
+    private static final ObjectArrayList<MultiblockController<?, ?, ?>> wokenControllers = new ObjectArrayList<>();
+    
+    private static final ObjectArrayList<MultiblockController<?, ?, ?>> offThreadControllers = new ObjectArrayList<>();
+    private static final ObjectArrayList<MultiblockController<?, ?, ?>> serverThreadControllers = new ObjectArrayList<>();
+    private static final ObjectArrayList<Event> offThreadUpdateEvents = new ObjectArrayList<>();
     
     public static void addController(MultiblockController<?, ?, ?> controller) {
         newControllers.add(controller);
@@ -27,6 +68,19 @@ public final class MultiblockRegistry {
         oldControllers.add(controller);
     }
     
+    static void wakeController(MultiblockController<?, ?, ?> controller) {
+        wokenControllers.add(controller);
+    }
+    
+    public static LevelStats stats(Level level) {
+        //noinspection SuspiciousMethodCalls
+        final var levelControllers = levels.get(level);
+        if (levelControllers == null) {
+            return LevelStats.EMPTY;
+        }
+        return levelControllers.stats;
+    }
+    
     @OnModLoad
     private static void onModLoad() {
         MinecraftForge.EVENT_BUS.register(MultiblockRegistry.class);
@@ -36,35 +90,69 @@ public final class MultiblockRegistry {
     static void onWorldUnload(final LevelEvent.Unload worldUnloadEvent) {
         if (!worldUnloadEvent.getLevel().isClientSide()) {
             //noinspection SuspiciousMethodCalls
-            ObjectArrayList<MultiblockController<?, ?, ?>> controllersToTick = MultiblockRegistry.controllersToTick.remove(worldUnloadEvent.getLevel());
-            if (controllersToTick != null) {
-                for (MultiblockController<?, ?, ?> multiblockController : controllersToTick) {
-                    multiblockController.suicide();
+            final var levelControllers = levels.remove(worldUnloadEvent.getLevel());
+            if (levelControllers != null) {
+                final var controllers = levelControllers.controllers;
+                // suicide doesn't touch the set, removals are queued
+                for (int i = 0; i < controllers.size(); i++) {
+                    controllers.get(i).suicide();
                 }
+                controllers.clear();
+                levelControllers.controllersToTick.clear();
             }
             // stragglers will exist
             newControllers.removeIf(multiblockController -> multiblockController.level == worldUnloadEvent.getLevel());
             oldControllers.removeIf(multiblockController -> multiblockController.level == worldUnloadEvent.getLevel());
+            wokenControllers.removeIf(multiblockController -> multiblockController.level == worldUnloadEvent.getLevel());
         }
     }
     
     @SubscribeEvent
     static void onServerStop(final ServerStoppedEvent serverStoppedEvent) {
-        controllersToTick.clear();
+        for (final var levelControllers : levels.values()) {
+            levelControllers.controllers.clear();
+            levelControllers.controllersToTick.clear();
+        }
+        levels.clear();
         newControllers.clear();
         oldControllers.clear();
+        wokenControllers.clear();
     }
     
     @SubscribeEvent
     static void tickServer(TickEvent.ServerTickEvent e) {
+        if (e.phase == TickEvent.Phase.START) {
+            for (final var levelControllers : levels.values()) {
+                levelControllers.rollStats();
+            }
+        }
         for (MultiblockController<?, ?, ?> newController : newControllers) {
-            controllersToTick.computeIfAbsent((ServerLevel) newController.level, k -> new ObjectArrayList<>()).add(newController);
+            final var levelControllers = levels.computeIfAbsent((ServerLevel) newController.level, k -> new LevelControllers());
+            if (levelControllers.controllers.add(newController)) {
+                levelControllers.added++;
+            }
+            levelControllers.controllersToTick.add(newController);
         }
         newControllers.clear();
+        for (MultiblockController<?, ?, ?> wokenController : wokenControllers) {
+            //noinspection SuspiciousMethodCalls
+            final var levelControllers = levels.get(wokenController.level);
+            // dead controllers can still be poked awake
+            if (levelControllers != null && levelControllers.controllers.contains(wokenController)) {
+                levelControllers.controllersToTick.add(wokenController);
+            }
+        }
+        wokenControllers.clear();
         for (MultiblockController<?, ?, ?> oldController : oldControllers) {
             //noinspection SuspiciousMethodCalls
-            var controllers = controllersToTick.get(oldController.level);
-            controllers.remove(oldController);
+            final var levelControllers = levels.get(oldController.level);
+            if (levelControllers == null) {
+                continue;
+            }
+            if (levelControllers.controllers.remove(oldController)) {
+                levelControllers.removed++;
+            }
+            levelControllers.controllersToTick.remove(oldController);
         }
         oldControllers.clear();
     }
@@ -79,21 +167,107 @@ public final class MultiblockRegistry {
             return;
         }
         
-        var controllersToTick = MultiblockRegistry.controllersToTick.get(e.level);
-        if (controllersToTick != null) {
-            for (var controller : controllersToTick) {
-                if (controller != null) {
-                    controller.update();
-                }
+        //noinspection SuspiciousMethodCalls
+        final var levelControllers = levels.get(e.level);
+        if (levelControllers == null) {
+            return;
+        }
+        final var controllersToTick = levelControllers.controllersToTick;
+        final boolean parallelTick = Phosphophyllite.CONFIG.multiblock.parallelTick;
+        final long structuralBudget = Phosphophyllite.CONFIG.multiblock.structuralTickBudgetMS * 1_000_000L;
+        long structuralTime = 0;
+        
+        // start from whoever was skipped last tick, so a level that is constantly over budget still gets to everyone
+        final int size = controllersToTick.size();
+        final var resumeController = levelControllers.resumeFrom;
+        levelControllers.resumeFrom = null;
+        final int start = resumeController == null ? 0 : Math.max(0, controllersToTick.indexOf(resumeController));
+        
+        // structural updates touch the world and other controllers, so they stay serial
+        for (int n = 0; n < size; n++) {
+            int i = start + n;
+            if (i >= size) {
+                i -= size;
+            }
+            final var controller = controllersToTick.get(i);
+            if (!controller.beginUpdate()) {
+                continue;
+            }
+            if (structuralBudget == 0 || structuralTime < structuralBudget || !controller.structuralWorkPending()) {
+                final long structuralStart = System.nanoTime();
+                controller.structuralUpdate();
+                structuralTime += System.nanoTime() - structuralStart;
+            } else if (levelControllers.resumeFrom == null) {
+                // carried over, nothing has been torn down yet so the controller still ticks what it has
+                levelControllers.resumeFrom = controller;
+            }
+            if (!parallelTick) {
+                controller.moduleUpdate();
+            } else if (controller.threadSafeUpdate()) {
+                offThreadControllers.add(controller);
+            } else {
+                serverThreadControllers.add(controller);
+            }
+        }
+        if (!parallelTick) {
+            parkIdleControllers(controllersToTick);
+            return;
+        }
+        
+        for (int i = 0; i < offThreadControllers.size(); i++) {
+            final var controller = offThreadControllers.get(i);
+            controller.beginOffThreadUpdate();
+            offThreadUpdateEvents.add(Queues.offThread.enqueue(controller::offThreadModuleUpdate));
+        }
+        for (int i = 0; i < serverThreadControllers.size(); i++) {
+            serverThreadControllers.get(i).moduleUpdate();
+        }
+        for (int i = 0; i < offThreadUpdateEvents.size(); i++) {
+            final var event = offThreadUpdateEvents.get(i);
+            // join can return early on a spurious wakeup
+            while (!event.ready()) {
+                event.join();
+            }
+        }
+        RuntimeException crash = null;
+        for (int i = 0; i < offThreadControllers.size(); i++) {
+            final var controllerCrash = offThreadControllers.get(i).endOffThreadUpdate();
+            if (crash == null) {
+                crash = controllerCrash;
+            }
+        }
+        offThreadUpdateEvents.clear();
+        offThreadControllers.clear();
+        serverThreadControllers.clear();
+        if (crash != null) {
+            // crash the server like a serial update would
+            throw crash;
+        }
+        parkIdleControllers(controllersToTick);
+    }
+    
+    /**
+     * Drops controllers with nothing to do from the tick list, they are put back by {@link MultiblockController#wake()}
+     */
+    private static void parkIdleControllers(ControllerSet controllersToTick) {
+        // backwards, so whatever gets swapped into a removed slot has already been checked
+        for (int i = controllersToTick.size() - 1; i >= 0; i--) {
+            final var controller = controllersToTick.get(i);
+            if (controller.canSleep()) {
+                controller.asleep = true;
+                controllersToTick.remove(controller);
             }
         }
     }
     
     public static void revalidateAll() {
-        controllersToTick.forEach((serverLevel, multiblockControllers) -> multiblockControllers.forEach(controller -> {
-            if (controller instanceof IValidatedMultiblock<?, ?, ?> validatedMultiblock) {
-                validatedMultiblock.requestValidation();
+        for (final var levelControllers : levels.values()) {
+            final var controllers = levelControllers.controllers;
+            for (int i = 0; i < controllers.size(); i++) {
+                if (controllers.get(i) instanceof IValidatedMultiblock<?, ?, ?> validatedMultiblock) {
+                    validatedMultiblock.requestValidation();
+                }
             }
-        }));
+        }
     }
 }
@@ -36,12 +36,6 @@ public final class MultiblockTileModule<
     boolean preExistingBlock = false;
     boolean allowAttach = false;
     
-    long lastSavedTick = 0;
-    
-    @SuppressWarnings("unchecked") // its fine
-    final MultiblockTileModule<TileType, BlockType, ControllerType>[] neighbors = new MultiblockTileModule[6];
-    final BlockEntity[] neighborTiles = new BlockEntity[6];
-    
     private final ObjectArrayList<ICoreMultiblockTileModule<TileType, BlockType, ControllerType>> coreMultiblockTileModules = new ObjectArrayList<>();
     
     @OnModLoad
@@ -70,7 +64,7 @@ public final class MultiblockTileModule<
     public void startTicking() {
         // this fires on server only
         allowAttach = true;
-        attachToNeighborsLater();
+        ChunkAttachBatcher.enqueue(this);
     }
     
     @Override
@@ -128,7 +122,7 @@ public final class MultiblockTileModule<
     }
     
     @Contract(pure = true)
-    private boolean shouldConnectTo(IMultiblockTile<?, ?, ?> otherRawTile, Direction direction) {
+    boolean shouldConnectTo(IMultiblockTile<?, ?, ?> otherRawTile, Direction direction) {
         if (!allowAttach) {
             return false;
         }
@@ -168,44 +162,12 @@ public final class MultiblockTileModule<
         return true;
     }
     
-    void updateNeighbors() {
-        if (controller == null) {
-            return;
-        }
-        nullNeighbors();
-        var pos = iface.getBlockPos();
-        for (Direction value : DIRECTIONS) {
-            var neighbor = controller.blocks.getModule(pos.getX() + value.getStepX(), pos.getY() + value.getStepY(), pos.getZ() + value.getStepZ());
-            if (neighbor == null || !shouldConnectTo(neighbor.iface, value)) {
-                continue;
-            }
-            neighbors[value.get3DDataValue()] = neighbor;
-            neighborTiles[value.get3DDataValue()] = neighbor.iface;
-        }
-        for (int i = 0; i < neighbors.length; i++) {
-            MultiblockTileModule<TileType, BlockType, ControllerType> neighbor = neighbors[i];
-            if (neighbor != null) {
-                neighbor.neighbors[Direction.from3DDataValue(i).getOpposite().get3DDataValue()] = this;
-                neighbor.neighborTiles[Direction.from3DDataValue(i).getOpposite().get3DDataValue()] = iface;
-            }
-        }
-    }
-    
-    void nullNeighbors() {
-        for (int i = 0; i < neighbors.length; i++) {
-            MultiblockTileModule<?, ?, ?> neighbor = neighbors[i];
-            if (neighbor != null) {
-                neighbor.neighbors[Direction.from3DDataValue(i).getOpposite().get3DDataValue()] = null;
-                neighbor.neighborTiles[Direction.from3DDataValue(i).getOpposite().get3DDataValue()] = null;
-            }
-            neighbors[i] = null;
-            neighborTiles[i] = null;
-        }
-    }
-    
     @Nullable
     public MultiblockTileModule<TileType, BlockType, ControllerType> getNeighbor(Direction direction) {
-        return neighbors[direction.get3DDataValue()];
+        if (controller == null) {
+            return null;
+        }
+        return controller.neighbor(this, direction);
     }
     
     public void attachToNeighborsLater() {
@@ -215,20 +177,34 @@ public final class MultiblockTileModule<
         Queues.serverThread.enqueueUntracked(this::attachToNeighborsNow);
     }
     
-    public void attachToNeighborsNow() {
+    /**
+     * Checks that the tile is still live in the world, and lets the core modules know an attach is coming
+     *
+     * @return if the tile should be attached
+     */
+    boolean prepareAttach() {
         final var level = iface.getLevel();
         assert level != null;
         if (level.isClientSide) {
-            return;
+            return false;
         }
         if (iface.isRemoved()) {
-            return;
+            return false;
         }
-        final var pos = iface.getBlockPos();
-        if (iface.getLevel().getBlockEntity(pos) != iface) {
-            return;
+        if (level.getBlockEntity(iface.getBlockPos()) != iface) {
+            return false;
         }
         coreMultiblockTileModules.forEach(ICoreMultiblockTileModule::aboutToAttemptAttach);
+        return true;
+    }
+    
+    public void attachToNeighborsNow() {
+        if (!prepareAttach()) {
+            return;
+        }
+        final var level = iface.getLevel();
+        assert level != null;
+        final var pos = iface.getBlockPos();
         BlockPos.MutableBlockPos possibleTilePos = new BlockPos.MutableBlockPos();
         for (Direction direction : DIRECTIONS) {
             possibleTilePos.set(pos);
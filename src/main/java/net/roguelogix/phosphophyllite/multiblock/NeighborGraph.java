@@ -0,0 +1,627 @@
+package net.roguelogix.phosphophyllite.multiblock;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import net.roguelogix.phosphophyllite.util.NonnullDefault;
+
+import java.util.Arrays;
+
+/**
+ * Neighbor links of a controller's blocks, indexed by their slot in the controller's {@link net.roguelogix.phosphophyllite.util.ModuleMap}
+ * Slots must be kept in lockstep with the map, appends append here, and a swap-remove there is a {@link #removeSlot(int)} here
+ * <p>
+ * Also keeps a spanning forest over those links, one tree per connected component
+ * Removing a block cuts its tree apart, the neighbors it was cut at are kept as seeds for {@link #repair()}
+ * That searches out from all seeds at once, joining trees as their searches meet, and stops once at most one search can still find a link
+ * So deciding if breaks split the structure costs about the size of the smaller sides, not the whole thing, and a burst of breaks in one area is repaired once
+ * <p>
+ * Trees can get deep, a pipe is one long chain, so which tree a slot is in is kept in a union find over tree labels
+ * Linking checks labels instead of walking to roots, and when joining two trees the smaller one is re-rooted
+ * A cut can leave several trees under one label, until the following split sorts them out links walk to the roots again
+ * <p>
+ * Directions are {@link net.minecraft.core.Direction#get3DDataValue()}
+ */
+@NonnullDefault
+final class NeighborGraph {
+    
+    private static final int[] OPPOSITE = {1, 0, 3, 2, 5, 4};
+    
+    private int size = 0;
+    // 6 per slot, -1 for no link
+    private int[] links = new int[6 * 16];
+    // spanning forest parent, -1 for roots
+    private int[] parents = new int[16];
+    // out of the forest, either taken by removeSmallerComponents or being removed
+    private boolean[] detached = new boolean[16];
+    private final IntLinkedOpenHashSet roots = new IntLinkedOpenHashSet();
+    // slots next to removals since the last repair, may be stale, any extra seed only costs an extra search
+    private final IntLinkedOpenHashSet seeds = new IntLinkedOpenHashSet();
+    // search each slot was visited by during a repair, -1 otherwise
+    private int[] visitedBy = new int[16];
+    // tree label of each slot, and the union find over labels, sizes count slots and are only upper bounds after removals
+    private int[] labels = new int[16];
+    private int[] labelParents = new int[16];
+    private int[] labelSizes = new int[16];
+    private int labelCount = 0;
+    // if every label set is exactly one tree, false from a cut until the split after it
+    private boolean exactLabels = true;
+    
+    {
+        Arrays.fill(visitedBy, -1);
+    }
+    
+    /**
+     * Breadth first walk of one tree, along tree links, from every seed in it
+     */
+    private static final class Search {
+        private static final int ACTIVE = 0;
+        // walked all of its tree without finding a link out
+        private static final int CLOSED = 1;
+        // tree was hung onto the tree of forward
+        private static final int MERGED = 2;
+        // tree was hung onto a tree no search is walking, nothing more to find
+        private static final int ANCHORED = 3;
+        
+        final int id;
+        final int root;
+        final IntArrayList queue = new IntArrayList();
+        int head = 0;
+        int state = ACTIVE;
+        int forward = -1;
+        
+        private Search(int id, int root) {
+            this.id = id;
+            this.root = root;
+        }
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    /**
+     * Only exact after a {@link #repair()}, until then every cut counts as a split
+     */
+    int componentCount() {
+        return roots.size();
+    }
+    
+    /**
+     * Rejoins the trees cut apart since the last repair wherever they are still linked
+     * <p>
+     * Every tree with a seed in it gets a search, and the searches take turns walking one slot each
+     * A link from a walked slot to another tree hangs this tree onto that one, and the two searches continue as one
+     * A search that runs out of slots has no link out, so its tree is a real component
+     * Trees without a seed can't be linked to one with a seed, every link between trees is across a cut, so once a single search is left it can stop
+     */
+    void repair() {
+        if (seeds.isEmpty()) {
+            return;
+        }
+        final var searches = new ObjectArrayList<Search>();
+        final var searchByRoot = new Int2IntOpenHashMap();
+        searchByRoot.defaultReturnValue(-1);
+        final var knownRoots = new Int2IntOpenHashMap();
+        knownRoots.defaultReturnValue(-1);
+        final var seedIterator = seeds.iterator();
+        while (seedIterator.hasNext()) {
+            final int seed = seedIterator.nextInt();
+            if (seed >= size || detached[seed] || visitedBy[seed] != -1) {
+                continue;
+            }
+            final int root = root(seed, knownRoots);
+            int searchId = searchByRoot.get(root);
+            if (searchId == -1) {
+                searchId = searches.size();
+                searches.add(new Search(searchId, root));
+                searchByRoot.put(root, searchId);
+            }
+            visitedBy[seed] = searchId;
+            searches.get(searchId).queue.add(seed);
+        }
+        seeds.clear();
+        
+        int active = searches.size();
+        while (active > 1) {
+            for (int i = 0; i < searches.size() && active > 1; i++) {
+                final var search = searches.get(i);
+                if (search.state != Search.ACTIVE) {
+                    continue;
+                }
+                if (search.head == search.queue.size()) {
+                    search.state = Search.CLOSED;
+                    active--;
+                    continue;
+                }
+                final int node = search.queue.getInt(search.head++);
+                for (int j = node * 6; j < node * 6 + 6; j++) {
+                    final int neighbor = links[j];
+                    if (neighbor == -1 || detached[neighbor]) {
+                        continue;
+                    }
+                    if (parents[node] == neighbor || parents[neighbor] == node) {
+                        if (visitedBy[neighbor] == -1) {
+                            visitedBy[neighbor] = search.id;
+                            search.queue.add(neighbor);
+                        }
+                        continue;
+                    }
+                    final Search other;
+                    if (visitedBy[neighbor] != -1) {
+                        other = resolve(searches, visitedBy[neighbor]);
+                        if (other == search) {
+                            continue;
+                        }
+                    } else {
+                        final int otherId = searchByRoot.get(root(neighbor, knownRoots));
+                        other = otherId == -1 ? null : resolve(searches, otherId);
+                        if (other == search) {
+                            continue;
+                        }
+                    }
+                    roots.remove(search.root);
+                    evert(node);
+                    parents[node] = neighbor;
+                    unionLabels(labels[node], labels[neighbor]);
+                    active--;
+                    if (other == null || other.state == Search.ANCHORED) {
+                        search.state = Search.ANCHORED;
+                        break;
+                    }
+                    if (other.state == Search.CLOSED) {
+                        // shouldn't happen, a closed tree would have found this link itself, but walk it again if it does
+                        other.state = Search.ACTIVE;
+                        active++;
+                    }
+                    search.state = Search.MERGED;
+                    search.forward = other.id;
+                    // the rest of this slot's links weren't looked at yet, so it goes along too
+                    other.queue.addAll(search.queue.subList(search.head - 1, search.queue.size()));
+                    break;
+                }
+            }
+        }
+        
+        for (final var search : searches) {
+            final var elements = search.queue.elements();
+            for (int i = 0; i < search.queue.size(); i++) {
+                visitedBy[elements[i]] = -1;
+            }
+        }
+        if (roots.size() <= 1) {
+            exactLabels = true;
+        }
+    }
+    
+    private static Search resolve(ObjectArrayList<Search> searches, int searchId) {
+        var search = searches.get(searchId);
+        while (search.state == Search.MERGED) {
+            search = searches.get(search.forward);
+        }
+        return search;
+    }
+    
+    /**
+     * @return the slot linked to in that direction, -1 if none
+     */
+    int neighbor(int slot, int direction) {
+        return links[slot * 6 + direction];
+    }
+    
+    private void ensureCapacity(int capacity) {
+        if (parents.length >= capacity) {
+            return;
+        }
+        final int newCapacity = Math.max(capacity, parents.length * 2);
+        links = Arrays.copyOf(links, newCapacity * 6);
+        parents = Arrays.copyOf(parents, newCapacity);
+        detached = Arrays.copyOf(detached, newCapacity);
+        final int oldCapacity = visitedBy.length;
+        visitedBy = Arrays.copyOf(visitedBy, newCapacity);
+        Arrays.fill(visitedBy, oldCapacity, newCapacity, -1);
+        labels = Arrays.copyOf(labels, newCapacity);
+    }
+    
+    private void ensureLabelCapacity(int capacity) {
+        if (labelParents.length >= capacity) {
+            return;
+        }
+        final int newCapacity = Math.max(capacity, labelParents.length * 2);
+        labelParents = Arrays.copyOf(labelParents, newCapacity);
+        labelSizes = Arrays.copyOf(labelSizes, newCapacity);
+    }
+    
+    /**
+     * Only call with every slot below size labeled, labels may be compacted
+     */
+    private int newLabel(int slotCount) {
+        if (labelCount == labelParents.length && labelCount > size * 2 + 16) {
+            compactLabels();
+        }
+        ensureLabelCapacity(labelCount + 1);
+        final int label = labelCount++;
+        labelParents[label] = label;
+        labelSizes[label] = slotCount;
+        return label;
+    }
+    
+    /**
+     * Labels are never freed, so once most are dead every slot is relabeled with one label per set
+     */
+    private void compactLabels() {
+        final var remap = new Int2IntOpenHashMap();
+        remap.defaultReturnValue(-1);
+        int count = 0;
+        for (int slot = 0; slot < size; slot++) {
+            final int set = findLabel(labels[slot]);
+            int label = remap.get(set);
+            if (label == -1) {
+                label = count++;
+                remap.put(set, label);
+            }
+            labels[slot] = label;
+        }
+        labelCount = count;
+        for (int label = 0; label < labelCount; label++) {
+            labelParents[label] = label;
+            labelSizes[label] = 0;
+        }
+        for (int slot = 0; slot < size; slot++) {
+            labelSizes[labels[slot]]++;
+        }
+    }
+    
+    private int findLabel(int label) {
+        while (labelParents[label] != label) {
+            // path halving
+            labelParents[label] = labelParents[labelParents[label]];
+            label = labelParents[label];
+        }
+        return label;
+    }
+    
+    private void unionLabels(int a, int b) {
+        a = findLabel(a);
+        b = findLabel(b);
+        if (a == b) {
+            return;
+        }
+        if (labelSizes[a] < labelSizes[b]) {
+            final int swap = a;
+            a = b;
+            b = swap;
+        }
+        labelParents[b] = a;
+        labelSizes[a] += labelSizes[b];
+    }
+    
+    /**
+     * Appends an unlinked slot, it's its own component until linked
+     */
+    int addSlot() {
+        ensureCapacity(size + 1);
+        final int label = newLabel(1);
+        final int slot = size++;
+        labels[slot] = label;
+        Arrays.fill(links, slot * 6, slot * 6 + 6, -1);
+        parents[slot] = -1;
+        detached[slot] = false;
+        roots.add(slot);
+        return slot;
+    }
+    
+    /**
+     * Links both sides, joining the two trees if they were separate
+     * If neither side is its tree's root, the smaller tree is re-rooted
+     */
+    void link(int slot, int direction, int neighbor) {
+        links[slot * 6 + direction] = neighbor;
+        links[neighbor * 6 + OPPOSITE[direction]] = slot;
+        if (detached[slot] || detached[neighbor]) {
+            return;
+        }
+        final int slotSet = findLabel(labels[slot]);
+        final int neighborSet = findLabel(labels[neighbor]);
+        // a cut may have left several trees in one set, only the roots can tell them apart then
+        if (slotSet == neighborSet && (exactLabels || root(slot) == root(neighbor))) {
+            return;
+        }
+        // hanging a root is free, only evert if neither side is one
+        final boolean slotIsRoot = parents[slot] == -1;
+        if (parents[neighbor] == -1 && (!slotIsRoot || labelSizes[neighborSet] <= labelSizes[slotSet])) {
+            roots.remove(neighbor);
+            parents[neighbor] = slot;
+        } else if (slotIsRoot) {
+            roots.remove(slot);
+            parents[slot] = neighbor;
+        } else if (labelSizes[slotSet] < labelSizes[neighborSet]) {
+            roots.remove(evert(slot));
+            parents[slot] = neighbor;
+        } else {
+            roots.remove(evert(neighbor));
+            parents[neighbor] = slot;
+        }
+        unionLabels(slotSet, neighborSet);
+    }
+    
+    /**
+     * Unlinks a slot that has been given a new module, it's its own component until linked again
+     */
+    void resetSlot(int slot) {
+        isolate(slot);
+        detached[slot] = false;
+        roots.add(slot);
+        labels[slot] = newLabel(1);
+    }
+    
+    /**
+     * Unlinks the slot and moves the last slot into its place, same as the swap-remove in ModuleMap
+     */
+    void removeSlot(int slot) {
+        isolate(slot);
+        final int last = --size;
+        if (slot != last) {
+            moveSlot(last, slot);
+        }
+    }
+    
+    /**
+     * Unlinks the slot from everything, its tree is left cut apart around it for {@link #repair()}, it's left detached
+     */
+    private void isolate(int slot) {
+        if (!detached[slot]) {
+            if (parents[slot] == -1) {
+                roots.remove(slot);
+            } else {
+                seeds.add(parents[slot]);
+            }
+            parents[slot] = -1;
+            detached[slot] = true;
+            for (int i = slot * 6; i < slot * 6 + 6; i++) {
+                final int neighbor = links[i];
+                if (neighbor != -1 && !detached[neighbor] && parents[neighbor] == slot) {
+                    exactLabels = false;
+                    parents[neighbor] = -1;
+                    roots.add(neighbor);
+                    seeds.add(neighbor);
+                }
+            }
+        }
+        for (int direction = 0; direction < 6; direction++) {
+            final int neighbor = links[slot * 6 + direction];
+            if (neighbor != -1) {
+                links[neighbor * 6 + OPPOSITE[direction]] = -1;
+                links[slot * 6 + direction] = -1;
+            }
+        }
+    }
+    
+    private void moveSlot(int from, int to) {
+        System.arraycopy(links, from * 6, links, to * 6, 6);
+        parents[to] = parents[from];
+        detached[to] = detached[from];
+        labels[to] = labels[from];
+        for (int direction = 0; direction < 6; direction++) {
+            final int neighbor = links[to * 6 + direction];
+            if (neighbor == -1) {
+                continue;
+            }
+            links[neighbor * 6 + OPPOSITE[direction]] = to;
+            if (parents[neighbor] == from) {
+                parents[neighbor] = to;
+            }
+        }
+        if (!detached[from] && parents[from] == -1) {
+            roots.remove(from);
+            roots.add(to);
+        }
+        if (seeds.remove(from)) {
+            seeds.add(to);
+        }
+    }
+    
+    void clear() {
+        size = 0;
+        roots.clear();
+        seeds.clear();
+        labelCount = 0;
+        exactLabels = true;
+    }
+    
+    /**
+     * Drops the forest, removals after this don't bother repairing it
+     * Only for when every slot is about to be removed
+     */
+    void detachAll() {
+        Arrays.fill(detached, 0, size, true);
+        roots.clear();
+        seeds.clear();
+        exactLabels = true;
+    }
+    
+    /**
+     * Repairs, then walks every tree but the largest, the walks are interleaved so the largest tree is only walked as far as the second largest
+     *
+     * @param components: filled with the slots of every component that isn't the largest, in tree order
+     *                    slots are left detached, but still linked, for {@link #appendComponent(NeighborGraph, IntList)}
+     */
+    void removeSmallerComponents(ObjectArrayList<IntArrayList> components) {
+        repair();
+        if (roots.size() <= 1) {
+            return;
+        }
+        final var walks = new ObjectArrayList<IntArrayList>(roots.size());
+        final var walkProgress = new int[roots.size()];
+        final var rootIterator = roots.iterator();
+        while (rootIterator.hasNext()) {
+            final var walk = new IntArrayList();
+            walk.add(rootIterator.nextInt());
+            walks.add(walk);
+        }
+        int unfinishedWalks = walks.size();
+        while (unfinishedWalks > 1) {
+            for (int i = 0; i < walks.size(); i++) {
+                final var walk = walks.get(i);
+                if (walkProgress[i] == -1) {
+                    continue;
+                }
+                if (walkProgress[i] == walk.size()) {
+                    walkProgress[i] = -1;
+                    unfinishedWalks--;
+                    if (unfinishedWalks == 1) {
+                        break;
+                    }
+                    continue;
+                }
+                final int node = walk.getInt(walkProgress[i]++);
+                for (int j = node * 6; j < node * 6 + 6; j++) {
+                    final int neighbor = links[j];
+                    if (neighbor != -1 && !detached[neighbor] && parents[neighbor] == node) {
+                        walk.add(neighbor);
+                    }
+                }
+            }
+        }
+        int lastUnfinished = -1;
+        for (int i = 0; i < walks.size(); i++) {
+            if (walkProgress[i] != -1) {
+                lastUnfinished = i;
+                break;
+            }
+        }
+        for (int i = 0; i < walks.size(); i++) {
+            if (i == lastUnfinished) {
+                continue;
+            }
+            final var walk = walks.get(i);
+            roots.remove(walk.getInt(0));
+            for (int j = 0; j < walk.size(); j++) {
+                detached[walk.getInt(j)] = true;
+            }
+            components.add(walk);
+        }
+        // one tree left, everything else is detached
+        exactLabels = true;
+    }
+    
+    /**
+     * Appends a copy of another graph's slots, in order, with their links and trees
+     * The other graph is repaired first, its seeds would be lost otherwise
+     */
+    void appendAll(NeighborGraph other) {
+        other.repair();
+        final int base = size;
+        ensureCapacity(size + other.size);
+        for (int i = 0; i < other.size * 6; i++) {
+            final int neighbor = other.links[i];
+            links[base * 6 + i] = neighbor == -1 ? -1 : neighbor + base;
+        }
+        for (int i = 0; i < other.size; i++) {
+            final int parent = other.parents[i];
+            parents[base + i] = parent == -1 ? -1 : parent + base;
+            detached[base + i] = other.detached[i];
+        }
+        final var rootIterator = other.roots.iterator();
+        while (rootIterator.hasNext()) {
+            roots.add(rootIterator.nextInt() + base);
+        }
+        final int labelBase = labelCount;
+        ensureLabelCapacity(labelCount + other.labelCount);
+        for (int i = 0; i < other.labelCount; i++) {
+            labelParents[labelBase + i] = other.labelParents[i] + labelBase;
+            labelSizes[labelBase + i] = other.labelSizes[i];
+        }
+        for (int i = 0; i < other.size; i++) {
+            labels[base + i] = other.labels[i] + labelBase;
+        }
+        labelCount += other.labelCount;
+        exactLabels &= other.exactLabels;
+        size += other.size;
+    }
+    
+    /**
+     * Appends a copy of a group of slots from another graph, in list order, links leaving the group are dropped
+     */
+    void appendComponent(NeighborGraph source, IntList sourceSlots) {
+        final int base = size;
+        final int count = sourceSlots.size();
+        ensureCapacity(size + count);
+        // the group is a single tree
+        final int label = newLabel(count);
+        final var remap = new Int2IntOpenHashMap(count);
+        remap.defaultReturnValue(-1);
+        for (int i = 0; i < count; i++) {
+            remap.put(sourceSlots.getInt(i), base + i);
+        }
+        for (int i = 0; i < count; i++) {
+            final int sourceSlot = sourceSlots.getInt(i);
+            final int slot = base + i;
+            for (int direction = 0; direction < 6; direction++) {
+                final int neighbor = source.links[sourceSlot * 6 + direction];
+                links[slot * 6 + direction] = neighbor == -1 ? -1 : remap.get(neighbor);
+            }
+            final int parent = source.parents[sourceSlot];
+            parents[slot] = parent == -1 ? -1 : remap.get(parent);
+            detached[slot] = false;
+            labels[slot] = label;
+            if (parents[slot] == -1) {
+                roots.add(slot);
+            }
+        }
+        size += count;
+    }
+    
+    private int root(int slot) {
+        while (parents[slot] != -1) {
+            slot = parents[slot];
+        }
+        return slot;
+    }
+    
+    /**
+     * Root lookup for a repair, every slot walked past is remembered so no path is walked twice
+     * A remembered root may have been hung onto another tree since, but it was a root when the repair started, so its search still resolves to the right one
+     */
+    private int root(int slot, Int2IntOpenHashMap knownRoots) {
+        int root = slot;
+        while (true) {
+            final int known = knownRoots.get(root);
+            if (known != -1) {
+                root = known;
+                break;
+            }
+            if (parents[root] == -1) {
+                break;
+            }
+            root = parents[root];
+        }
+        while (slot != root && knownRoots.get(slot) == -1) {
+            knownRoots.put(slot, root);
+            if (parents[slot] == -1) {
+                break;
+            }
+            slot = parents[slot];
+        }
+        return root;
+    }
+    
+    /**
+     * Reverses the parent links from the slot up to its root, making the slot the root of its tree
+     *
+     * @return the old root
+     */
+    private int evert(int slot) {
+        int previous = -1;
+        int current = slot;
+        while (current != -1) {
+            final int next = parents[current];
+            parents[current] = previous;
+            previous = current;
+            current = next;
+        }
+        return previous;
+    }
+}
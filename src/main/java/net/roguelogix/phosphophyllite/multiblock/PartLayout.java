@@ -0,0 +1,164 @@
+package net.roguelogix.phosphophyllite.multiblock;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.roguelogix.phosphophyllite.util.NonnullDefault;
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+
+import static net.roguelogix.phosphophyllite.util.Util.DIRECTIONS;
+
+/**
+ * Neighbor links and bounds of a multiblock's parts, slot aligned with wherever the parts themselves are kept
+ * This is the structural half of attach, detach, split and merge, what the parts are is left to {@link Parts}
+ * {@link MultiblockController} keeps its parts in a ModuleMap, the jmh structure benchmarks only keep positions
+ */
+@NonnullDefault
+final class PartLayout {
+    
+    interface Parts {
+        /**
+         * @return slot of the part at the position, -1 if there isn't one
+         */
+        int indexOf(int x, int y, int z);
+        
+        long pos(int slot);
+        
+        /**
+         * @return if the part in the slot links to the one next to it in the direction
+         */
+        boolean connects(int slot, int neighborSlot, Direction direction);
+    }
+    
+    final NeighborGraph graph = new NeighborGraph();
+    private final AxisHistogram xHistogram = new AxisHistogram();
+    private final AxisHistogram yHistogram = new AxisHistogram();
+    private final AxisHistogram zHistogram = new AxisHistogram();
+    private final Vector3i min = new Vector3i(Integer.MAX_VALUE);
+    private final Vector3i max = new Vector3i(Integer.MIN_VALUE);
+    
+    Vector3ic min() {
+        return min;
+    }
+    
+    Vector3ic max() {
+        return max;
+    }
+    
+    /**
+     * The part was just put in the slot, either appended or replacing one at the same position
+     */
+    void attached(Parts parts, int slot) {
+        if (slot == graph.size()) {
+            graph.addSlot();
+        } else {
+            graph.resetSlot(slot);
+        }
+        final long pos = parts.pos(slot);
+        final int x = BlockPos.getX(pos);
+        final int y = BlockPos.getY(pos);
+        final int z = BlockPos.getZ(pos);
+        for (final var direction : DIRECTIONS) {
+            final int neighborSlot = parts.indexOf(x + direction.getStepX(), y + direction.getStepY(), z + direction.getStepZ());
+            if (neighborSlot == -1 || !parts.connects(slot, neighborSlot, direction)) {
+                continue;
+            }
+            graph.link(slot, direction.get3DDataValue(), neighborSlot);
+        }
+        addToBounds(x, y, z);
+    }
+    
+    /**
+     * Along with removing the part from its slot, the last slot is moved into it, same as ModuleMap does
+     * Bounds are left alone, see {@link #removeFromBounds(long)}
+     */
+    void removeSlot(int slot) {
+        graph.removeSlot(slot);
+    }
+    
+    void removeFromBounds(long pos) {
+        xHistogram.remove(BlockPos.getX(pos));
+        yHistogram.remove(BlockPos.getY(pos));
+        zHistogram.remove(BlockPos.getZ(pos));
+        updateBounds();
+    }
+    
+    private void addToBounds(int x, int y, int z) {
+        xHistogram.add(x);
+        yHistogram.add(y);
+        zHistogram.add(z);
+        updateBounds();
+    }
+    
+    private void updateBounds() {
+        min.set(xHistogram.min(), yHistogram.min(), zHistogram.min());
+        max.set(xHistogram.max(), yHistogram.max(), zHistogram.max());
+    }
+    
+    /**
+     * Only the subtrees orphaned by removals since the last check are searched
+     * If that finds more than one component, every one but the largest is taken out of the graph, each with a graph of its own
+     * Their parts are still in their slots and in the bounds, slots shift as those are removed, so copy out what's needed first
+     *
+     * @param componentGraphs: filled with the links of each component, slot aligned with its slots
+     * @return slots of the split off components, in tree order, empty if still connected
+     */
+    ObjectArrayList<IntArrayList> splitComponents(ObjectArrayList<NeighborGraph> componentGraphs) {
+        final var componentSlots = new ObjectArrayList<IntArrayList>();
+        graph.repair();
+        if (graph.componentCount() <= 1) {
+            return componentSlots;
+        }
+        graph.removeSmallerComponents(componentSlots);
+        for (final var slots : componentSlots) {
+            final var componentGraph = new NeighborGraph();
+            componentGraph.appendComponent(graph, slots);
+            componentGraphs.add(componentGraph);
+        }
+        return componentSlots;
+    }
+    
+    /**
+     * A component split off from another layout, its parts must already be appended from slot base on
+     * Links and the connectivity tree between them are kept as is
+     */
+    void attachComponent(Parts parts, int base, NeighborGraph componentGraph) {
+        graph.appendAll(componentGraph);
+        for (int slot = base; slot < graph.size(); slot++) {
+            final long pos = parts.pos(slot);
+            addToBounds(BlockPos.getX(pos), BlockPos.getY(pos), BlockPos.getZ(pos));
+        }
+    }
+    
+    /**
+     * Appends the other layout onto this one, its parts must already be appended from slot base on, without overlapping ours
+     * Only the other layout's slots are walked, to link across the seam between the two
+     */
+    void merge(PartLayout other, Parts parts, int base) {
+        xHistogram.addAll(other.xHistogram);
+        yHistogram.addAll(other.yHistogram);
+        zHistogram.addAll(other.zHistogram);
+        updateBounds();
+        graph.appendAll(other.graph);
+        for (int slot = base; slot < graph.size(); slot++) {
+            final long pos = parts.pos(slot);
+            final int x = BlockPos.getX(pos);
+            final int y = BlockPos.getY(pos);
+            final int z = BlockPos.getZ(pos);
+            for (final var direction : DIRECTIONS) {
+                final int directionIndex = direction.get3DDataValue();
+                if (graph.neighbor(slot, directionIndex) != -1) {
+                    // already linked on the other side of the merge
+                    continue;
+                }
+                final int neighborSlot = parts.indexOf(x + direction.getStepX(), y + direction.getStepY(), z + direction.getStepZ());
+                if (neighborSlot != -1 && parts.connects(slot, neighborSlot, direction)) {
+                    // joins the two trees, re-rooting the smaller one
+                    graph.link(neighborSlot, direction.getOpposite().get3DDataValue(), slot);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package net.roguelogix.phosphophyllite.multiblock;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.Level;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.level.LevelEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.roguelogix.phosphophyllite.Phosphophyllite;
+import net.roguelogix.phosphophyllite.multiblock.validated.IValidatedMultiblock;
+import net.roguelogix.phosphophyllite.registry.OnModLoad;
+import net.roguelogix.phosphophyllite.util.NonnullDefault;
+
+/**
+ * Ring buffer of the last structural events in a level, for tracking down structures that keep churning
+ * Entries are packed into primitive arrays, recording doesn't allocate
+ * <p>
+ * Server thread only
+ */
+@NonnullDefault
+public final class StructureJournal {
+    
+    public enum Event {
+        // data is the block position
+        ATTACH,
+        DETACH_UNLOADED,
+        DETACH_BROKEN,
+        DETACH_MERGED,
+        // data is the other controller's id
+        MERGED_IN,
+        SPLIT_OFF,
+        // no data
+        VALIDATION_STARTED,
+        VALIDATION_PASSED,
+        VALIDATION_FAILED,
+        // a module knew the state without validating, see IValidatedMultiblockControllerModule.knownAssemblyState
+        VALIDATION_SKIPPED,
+        // an off thread validation finished after the structure changed
+        VALIDATION_DISCARDED,
+        // data is the new state's ordinal
+        STATE_TRANSITION,
+        ;
+        
+        private static final Event[] VALUES = values();
+    }
+    
+    public interface EntryConsumer {
+        void accept(long tick, int controllerId, Event event, long data);
+    }
+    
+    private static final Object2ObjectOpenHashMap<Level, StructureJournal> journals = new Object2ObjectOpenHashMap<>();
+    private static final StructureJournal DISABLED = new StructureJournal(0);
+    
+    private final long[] ticks;
+    private final int[] controllerIds;
+    private final byte[] events;
+    private final long[] data;
+    // next slot to write
+    private int head = 0;
+    private int size = 0;
+    
+    private StructureJournal(int capacity) {
+        ticks = new long[capacity];
+        controllerIds = new int[capacity];
+        events = new byte[capacity];
+        data = new long[capacity];
+    }
+    
+    @OnModLoad
+    private static void onModLoad() {
+        MinecraftForge.EVENT_BUS.register(StructureJournal.class);
+    }
+    
+    @SubscribeEvent
+    static void onWorldUnload(final LevelEvent.Unload worldUnloadEvent) {
+        //noinspection SuspiciousMethodCalls
+        journals.remove(worldUnloadEvent.getLevel());
+    }
+    
+    @SubscribeEvent
+    static void onServerStop(final ServerStoppedEvent serverStoppedEvent) {
+        journals.clear();
+    }
+    
+    /**
+     * @return the level's journal, one that drops everything if the journal is disabled or the level is client side
+     */
+    public static StructureJournal of(Level level) {
+        final int capacity = Phosphophyllite.CONFIG.multiblock.structureJournalSize;
+        if (level.isClientSide || capacity <= 0) {
+            return DISABLED;
+        }
+        var journal = journals.get(level);
+        if (journal == null || journal.ticks.length != capacity) {
+            // also picks up a config change
+            journal = new StructureJournal(capacity);
+            journals.put(level, journal);
+        }
+        return journal;
+    }
+    
+    public void record(long tick, int controllerId, Event event, long data) {
+        if (ticks.length == 0) {
+            return;
+        }
+        ticks[head] = tick;
+        controllerIds[head] = controllerId;
+        events[head] = (byte) event.ordinal();
+        this.data[head] = data;
+        head++;
+        if (head == ticks.length) {
+            head = 0;
+        }
+        if (size < ticks.length) {
+            size++;
+        }
+    }
+    
+    /**
+     * Oldest first, includes merges and splits on other controllers that name this one
+     */
+    public void forEachEntry(int controllerId, EntryConsumer consumer) {
+        int index = head - size;
+        if (index < 0) {
+            index += ticks.length;
+        }
+        for (int i = 0; i < size; i++) {
+            final var event = Event.VALUES[events[index]];
+            final boolean otherControllerEvent = event == Event.MERGED_IN || event == Event.SPLIT_OFF;
+            if (controllerIds[index] == controllerId || (otherControllerEvent && data[index] == controllerId)) {
+                consumer.accept(ticks[index], controllerIds[index], event, data[index]);
+            }
+            index++;
+            if (index == ticks.length) {
+                index = 0;
+            }
+        }
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public static String describe(Event event, long data) {
+        return switch (event) {
+            case ATTACH, DETACH_UNLOADED, DETACH_BROKEN, DETACH_MERGED -> event + " " + BlockPos.getX(data) + ", " + BlockPos.getY(data) + ", " + BlockPos.getZ(data);
+            case MERGED_IN, SPLIT_OFF -> event + " controller " + data;
+            case STATE_TRANSITION -> event + " " + IValidatedMultiblock.AssemblyState.values()[(int) data];
+            default -> event.toString();
+        };
+    }
+}
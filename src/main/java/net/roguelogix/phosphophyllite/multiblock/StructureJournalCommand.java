@@ -0,0 +1,63 @@
+package net.roguelogix.phosphophyllite.multiblock;
+
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.commands.arguments.coordinates.BlockPosArgument;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.chat.Component;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.RegisterCommandsEvent;
+import net.roguelogix.phosphophyllite.Phosphophyllite;
+import net.roguelogix.phosphophyllite.registry.OnModLoad;
+import net.roguelogix.phosphophyllite.util.NonnullDefault;
+
+/**
+ * /phosphophyllite journal <pos> dumps the {@link StructureJournal} entries for the controller of the multiblock block at pos
+ * /phosphophyllite journal id <id> does the same for a controller id, for controllers that no longer exist
+ */
+@NonnullDefault
+final class StructureJournalCommand {
+    
+    @OnModLoad
+    private static void onModLoad() {
+        MinecraftForge.EVENT_BUS.addListener(StructureJournalCommand::registerCommands);
+    }
+    
+    private static void registerCommands(RegisterCommandsEvent event) {
+        event.getDispatcher().register(Commands.literal(Phosphophyllite.modid)
+                .then(Commands.literal("journal")
+                        .requires(source -> source.hasPermission(2))
+                        .then(Commands.argument("pos", BlockPosArgument.blockPos())
+                                .executes(context -> dumpAt(context.getSource(), BlockPosArgument.getLoadedBlockPos(context, "pos"))))
+                        .then(Commands.literal("id")
+                                .then(Commands.argument("id", IntegerArgumentType.integer(0))
+                                        .executes(context -> dump(context.getSource(), IntegerArgumentType.getInteger(context, "id")))))));
+    }
+    
+    private static int dumpAt(CommandSourceStack source, BlockPos pos) {
+        if (!(source.getLevel().getBlockEntity(pos) instanceof IMultiblockTile<?, ?, ?> tile) || tile.nullableController() == null) {
+            source.sendFailure(Component.literal("No multiblock controller at " + pos.toShortString()));
+            return 0;
+        }
+        return dump(source, tile.controller().id());
+    }
+    
+    private static int dump(CommandSourceStack source, int controllerId) {
+        final var journal = StructureJournal.of(source.getLevel());
+        if (journal.size() == 0) {
+            source.sendFailure(Component.literal("Structure journal is empty, or disabled in the config"));
+            return 0;
+        }
+        final int[] count = {0};
+        journal.forEachEntry(controllerId, (tick, entryControllerId, event, data) -> {
+            final var line = "[" + tick + "] controller " + entryControllerId + ": " + StructureJournal.describe(event, data);
+            source.sendSuccess(() -> Component.literal(line), false);
+            count[0]++;
+        });
+        if (count[0] == 0) {
+            source.sendFailure(Component.literal("No journal entries for controller " + controllerId));
+        }
+        return count[0];
+    }
+}
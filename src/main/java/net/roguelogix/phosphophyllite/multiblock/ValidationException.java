@@ -2,23 +2,56 @@ package net.roguelogix.phosphophyllite.multiblock;
 
 import net.minecraft.network.chat.Component;
 
+import javax.annotation.Nullable;
+
 public class ValidationException extends Exception {
-    private final Component cause;
+    protected static final Object[] NO_ARGS = new Object[0];
+    
+    @Nullable
+    private Component cause;
+    private final Object[] args;
     
     public ValidationException(String message) {
         super(message);
         cause = null;
+        args = NO_ARGS;
     }
     
     public ValidationException(Component cause) {
         super();
         this.cause = cause;
+        args = NO_ARGS;
+    }
+    
+    /**
+     * Stackless, and the component is only built once something asks for it
+     * Half built multiblocks fail validation every time they change, so this should be cheap to throw
+     */
+    protected ValidationException(@Nullable String translationKey, Object[] args) {
+        super(translationKey, null, false, false);
+        cause = null;
+        this.args = args;
+    }
+    
+    /**
+     * Cheap failure, see {@link #ValidationException(String, Object[])}
+     * Args are passed to {@link Component#translatable(String, Object...)} as is, so prefer primitives and strings over components
+     */
+    public static ValidationException of(String translationKey, Object... args) {
+        return new ValidationException(translationKey, args);
     }
     
     public Component getTextComponent() {
-        if (cause != null) {
-            return cause;
+        var cause = this.cause;
+        if (cause == null) {
+            // racing builds are harmless, they make equal components
+            cause = buildTextComponent();
+            this.cause = cause;
         }
-        return Component.translatable(getMessage());
+        return cause;
+    }
+    
+    protected Component buildTextComponent() {
+        return Component.translatable(String.valueOf(getMessage()), args);
     }
 }
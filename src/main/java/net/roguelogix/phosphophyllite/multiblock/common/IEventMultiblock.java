@@ -68,6 +68,16 @@ public interface IEventMultiblock<
             super(controller);
         }
         
+        @Override
+        public boolean threadSafeUpdate() {
+            return true;
+        }
+        
+        @Override
+        public boolean canSleep() {
+            return true;
+        }
+        
         @Override
         public void onPartAdded(@Nonnull TileType tile) {
             if (tile instanceof AssemblyStateTransition iface) {
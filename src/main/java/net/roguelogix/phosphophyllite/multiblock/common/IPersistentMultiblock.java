@@ -1,5 +1,6 @@
 package net.roguelogix.phosphophyllite.multiblock.common;
 
+import it.unimi.dsi.fastutil.HashCommon;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.entity.BlockEntity;
@@ -57,6 +58,14 @@ public interface IPersistentMultiblock<
         private int expectedBlocks = 0;
         @Nullable
         private IValidatedMultiblock.AssemblyState lastAssemblyState;
+        // structure hash and part count as of the last state transition, or as loaded from the parts, the hash includes the validation rules
+        private long expectedStructureHash = 0;
+        private int structureBlocks = 0;
+        private boolean hasExpectedStructureHash = false;
+        // full validation requests when the expectations were loaded, any since then mean the structure must be validated again
+        private int loadedFullValidationRequests = 0;
+        // set when parts that agree with the expectations above are loaded, the next validation may be skipped if the whole structure matches them
+        private boolean checkLoadedStructure = false;
         
         @OnModLoad
         public static void register() {
@@ -67,6 +76,16 @@ public interface IPersistentMultiblock<
             super(controller);
         }
         
+        @Override
+        public boolean threadSafeUpdate() {
+            return true;
+        }
+        
+        @Override
+        public boolean canSleep() {
+            return true;
+        }
+        
         private void partAdded(TileType newPart) {
             final var persistentModule = newPart.module(IPersistentMultiblockTile.class, IPersistentMultiblockTile.Module.class);
             assert persistentModule != null;
@@ -80,6 +99,21 @@ public interface IPersistentMultiblock<
             if (lastAssemblyState == null) {
                 lastAssemblyState = persistentModule.lastAssemblyState;
             }
+            if (persistentModule.hasStructureHash) {
+                if (!hasExpectedStructureHash) {
+                    expectedStructureHash = persistentModule.structureHash;
+                    structureBlocks = persistentModule.structureBlocks;
+                    hasExpectedStructureHash = true;
+                    loadedFullValidationRequests = controller.validatedModule().fullValidationRequests();
+                }
+                // knownAssemblyState checks the whole structure, this only limits skipping to right after a load
+                checkLoadedStructure = persistentModule.structureHash == expectedStructureHash
+                        && persistentModule.structureBlocks == structureBlocks
+                        && persistentModule.lastAssemblyState == lastAssemblyState;
+            }
+            // only good for the first attach after loading
+            persistentModule.expectedBlocks = 0;
+            persistentModule.hasStructureHash = false;
             
             final var newNBT = persistentModule.controllerNBT;
             persistentModule.controllerNBT = null;
@@ -113,6 +147,16 @@ public interface IPersistentMultiblock<
         public void merge(ControllerType other) {
             final var otherPersistentModule = other.module(IPersistentMultiblock.class, Module.class);
             assert otherPersistentModule != null;
+            // parts are loaded a chunk at a time and merged back together, the pieces of one structure agree on what it should be
+            final boolean sameStructure = hasExpectedStructureHash && otherPersistentModule.hasExpectedStructureHash
+                    && expectedStructureHash == otherPersistentModule.expectedStructureHash
+                    && structureBlocks == otherPersistentModule.structureBlocks
+                    && lastAssemblyState == otherPersistentModule.lastAssemblyState;
+            if (sameStructure) {
+                checkLoadedStructure |= otherPersistentModule.checkLoadedStructure && !otherPersistentModule.fullValidationRequested();
+            } else {
+                forgetStructure();
+            }
             if (otherPersistentModule.nbt != null) {
                 if (controller.assemblyState() != AssemblyState.DISASSEMBLED) {
                     // we are currently assembled, this will probably change, but this is on the implementation to handle
@@ -147,10 +191,12 @@ public interface IPersistentMultiblock<
         public void onPartPlaced(TileType tile) {
             // cannot have nbt when first placed
             expectedBlocks = 0;
+            forgetStructure();
         }
         
         public void onPartBroken(TileType tile) {
             expectedBlocks = 0;
+            forgetStructure();
             partRemoved(tile);
             if (tile == saveDelegate) {
                 hasSaveDelegate = false;
@@ -170,10 +216,50 @@ public interface IPersistentMultiblock<
             hasSaveDelegate = true;
         }
         
+        /**
+         * The structure changed from what was last validated or saved, so neither is any use
+         */
+        private void forgetStructure() {
+            structureBlocks = 0;
+            hasExpectedStructureHash = false;
+            checkLoadedStructure = false;
+        }
+        
+        /**
+         * The parts' hash mixed with the controller's validation rules, so a structure saved under different rules doesn't match
+         */
+        private long savedStructureHash() {
+            return controller.structureHash() ^ HashCommon.murmurHash3(controller.validationRulesHash());
+        }
+        
+        private boolean fullValidationRequested() {
+            return controller.validatedModule().fullValidationRequests() != loadedFullValidationRequests;
+        }
+        
         @Override
         public boolean canValidate() {
             return expectedBlocks <= controller.blocks.size();
         }
+        
+        /**
+         * Nothing changed while the parts were unloaded if the same blocks are back in the same places, so the multiblock can go straight back to being assembled
+         * Disassembled multiblocks are validated anyway, for their error, as is anything that was asked to revalidate since loading
+         */
+        @Nullable
+        @Override
+        public AssemblyState knownAssemblyState() {
+            if (!checkLoadedStructure) {
+                return null;
+            }
+            checkLoadedStructure = false;
+            if (lastAssemblyState != AssemblyState.ASSEMBLED || !hasExpectedStructureHash || fullValidationRequested()) {
+                return null;
+            }
+            if (structureBlocks != controller.blocks.size() || expectedStructureHash != savedStructureHash()) {
+                return null;
+            }
+            return AssemblyState.ASSEMBLED;
+        }
     
         @Override
         public boolean canTick() {
@@ -182,6 +268,12 @@ public interface IPersistentMultiblock<
         
         @Override
         public void onStateTransition(AssemblyState oldAssemblyState, AssemblyState newAssemblyState) {
+            // saved by the parts, checked against the structure rebuilt from them after a reload
+            lastAssemblyState = newAssemblyState;
+            structureBlocks = controller.blocks.size();
+            expectedStructureHash = savedStructureHash();
+            hasExpectedStructureHash = true;
+            checkLoadedStructure = false;
             if (shouldReadNBT) {
                 shouldReadNBT = false;
                 if (nbt != null) {
@@ -204,6 +296,14 @@ public interface IPersistentMultiblock<
             return tile == saveDelegate;
         }
         
+        void writeStructure(CompoundTag nbt) {
+            nbt.putString("last_assembly_state", (lastAssemblyState != null ? lastAssemblyState : AssemblyState.DISASSEMBLED).toString());
+            if (structureBlocks != 0 && hasExpectedStructureHash) {
+                nbt.putInt("structure_blocks", structureBlocks);
+                nbt.putLong("structure_hash", expectedStructureHash);
+            }
+        }
+        
         @Nullable
         CompoundTag getNBT() {
             if (nbt == null) {
@@ -34,6 +34,9 @@ public interface IPersistentMultiblockTile<
         CompoundTag controllerNBT;
         IValidatedMultiblock.AssemblyState lastAssemblyState = IValidatedMultiblock.AssemblyState.DISASSEMBLED;
         int expectedBlocks = 0;
+        long structureHash = 0;
+        int structureBlocks = 0;
+        boolean hasStructureHash = false;
         
         MultiblockTileModule<TileType, BlockType, ControllerType> multiblockModule;
         @Nullable
@@ -70,6 +73,11 @@ public interface IPersistentMultiblockTile<
             if (nbt.contains("expected_blocks")) {
                 expectedBlocks = nbt.getInt("expected_blocks");
             }
+            hasStructureHash = nbt.contains("structure_hash");
+            if (hasStructureHash) {
+                structureHash = nbt.getLong("structure_hash");
+                structureBlocks = nbt.getInt("structure_blocks");
+            }
             if (nbt.contains("controller_data")) {
                 this.controllerNBT = nbt.getCompound("controller_data");
                 return;
@@ -83,7 +91,11 @@ public interface IPersistentMultiblockTile<
                 controllerNBT = controllerPersistentModule.getNBT();
             }
             final var toReturn = new CompoundTag();
-            toReturn.putString("last_assembly_state", lastAssemblyState.toString());
+            if (controllerPersistentModule != null) {
+                controllerPersistentModule.writeStructure(toReturn);
+            } else {
+                toReturn.putString("last_assembly_state", lastAssemblyState.toString());
+            }
             if (controllerNBT != null) {
                 toReturn.put("controller_data", controllerNBT);
             }
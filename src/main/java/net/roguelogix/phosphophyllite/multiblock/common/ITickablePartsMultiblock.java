@@ -51,6 +51,16 @@ public interface ITickablePartsMultiblock<
             super(controller);
         }
         
+        @Override
+        public boolean threadSafeUpdate() {
+            return true;
+        }
+        
+        @Override
+        public boolean canSleep() {
+            return true;
+        }
+        
         @Override
         public void onPartAdded(@Nonnull TileType tile) {
             if (tile instanceof Tickable tickable) {
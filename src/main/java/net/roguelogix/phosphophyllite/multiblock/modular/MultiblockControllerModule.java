@@ -67,15 +67,77 @@ public abstract class MultiblockControllerModule<
     public void onPartBroken(TileType tile) {
     }
     
+    /**
+     * Batched form of {@link #onPartAdded} followed by {@link #onPartAttached} for each tile, used when a group of parts moves between controllers at once
+     */
+    public void onPartsAttached(List<TileType> tiles) {
+        for (int i = 0; i < tiles.size(); i++) {
+            final var tile = tiles.get(i);
+            onPartAdded(tile);
+            onPartAttached(tile);
+        }
+    }
+    
+    /**
+     * Batched form of {@link #onPartDetached} followed by {@link #onPartRemoved} for each tile, used when a group of parts moves between controllers at once
+     */
+    public void onPartsDetached(List<TileType> tiles) {
+        for (int i = 0; i < tiles.size(); i++) {
+            final var tile = tiles.get(i);
+            onPartDetached(tile);
+            onPartRemoved(tile);
+        }
+    }
+    
     public void merge(ControllerType other) {
     }
     
     public void split(List<ControllerType> others) {
     }
     
+    /**
+     * Called on the server thread before {@link #update()}, structural work (validation, block state changes) belongs here
+     * May be skipped for a tick if this controller has {@link #structuralWorkPending()} and the level is over its structural time budget, {@link #update()} is still called
+     */
+    public void preUpdate() {
+    }
+    
+    /**
+     * If {@link #preUpdate()} has work to do this tick that can wait for a later one, see multiblock.structuralTickBudgetMS
+     * Controllers with nothing pending always get their pre-update
+     */
+    public boolean structuralWorkPending() {
+        return false;
+    }
+    
     public void update() {
     }
     
+    /**
+     * If every module of a controller returns true, {@link #update()} may be called from a worker thread in parallel with other controllers
+     * Anything touching the world from there must go through {@link MultiblockController#runOnServerThread(Runnable)}
+     */
+    public boolean threadSafeUpdate() {
+        return false;
+    }
+    
+    /**
+     * If this module has no pending work and {@link #update()} would do nothing, the controller may be removed from the tick list
+     * Call {@link MultiblockController#wake()} when that stops being true, anything that changes the controller's blocks already does
+     */
+    public boolean canSleep() {
+        return false;
+    }
+    
+    /**
+     * Immutable summary of this module's state, published with the controller's {@link net.roguelogix.phosphophyllite.multiblock.ControllerSnapshot} at the end of each update
+     * Compared with {@link Object#equals(Object)} against the last one, return the same object while nothing changed to avoid publishing a new snapshot
+     */
+    @Nullable
+    public Object snapshotSummary() {
+        return null;
+    }
+    
     @Nullable
     @Override
     public DebugInfo getDebugInfo() {
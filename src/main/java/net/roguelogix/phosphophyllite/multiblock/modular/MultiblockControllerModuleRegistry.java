@@ -1,5 +1,7 @@
 package net.roguelogix.phosphophyllite.multiblock.modular;
 
+import net.roguelogix.phosphophyllite.modular.api.ModulePlan;
+import net.roguelogix.phosphophyllite.modular.api.ModulePlanCache;
 import net.roguelogix.phosphophyllite.util.NonnullDefault;
 
 import java.util.LinkedHashMap;
@@ -10,16 +12,24 @@ import java.util.function.Function;
 public class MultiblockControllerModuleRegistry {
     
     private static final LinkedHashMap<Class<? extends IModularMultiblockController<?, ?, ?>>, Function<IModularMultiblockController<?, ?, ?>, MultiblockControllerModule<?, ?, ?>>> moduleRegistry = new LinkedHashMap<>();
-    
+    private static final ModulePlanCache<IModularMultiblockController<?, ?, ?>, MultiblockControllerModule<?, ?, ?>> modulePlans = new ModulePlanCache<>(moduleRegistry);
     
     public synchronized static <T extends IModularMultiblockController<?, ?, ?>> void registerModule(Class<T> moduleInterface, Function<T, MultiblockControllerModule<?, ?, ?>> constructor) {
         //noinspection unchecked
         final Function<IModularMultiblockController<?, ?, ?>, MultiblockControllerModule<?, ?, ?>> wrapped = controller -> constructor.apply((T) controller);
         moduleRegistry.put(moduleInterface, wrapped);
+        modulePlans.invalidate();
     }
     
     public static void forEach(BiConsumer<Class<? extends IModularMultiblockController<?, ?, ?>>, Function<IModularMultiblockController<?, ?, ?>, MultiblockControllerModule<?, ?, ?>>> callback) {
         moduleRegistry.forEach(callback);
     }
     
+    /**
+     * @return the modules an instance of the controller class gets, cached per class until another module is registered
+     */
+    public static ModulePlan<IModularMultiblockController<?, ?, ?>, MultiblockControllerModule<?, ?, ?>> plan(Class<?> controllerClass) {
+        return modulePlans.get(controllerClass);
+    }
+    
 }
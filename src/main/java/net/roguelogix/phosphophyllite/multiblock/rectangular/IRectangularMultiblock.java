@@ -1,9 +1,12 @@
 package net.roguelogix.phosphophyllite.multiblock.rectangular;
 
-import net.minecraft.network.chat.Component;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import net.minecraft.core.BlockPos;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.entity.BlockEntity;
-import net.minecraft.world.level.block.state.BlockState;
+import net.roguelogix.phosphophyllite.Phosphophyllite;
 import net.roguelogix.phosphophyllite.multiblock.MultiblockController;
 import net.roguelogix.phosphophyllite.multiblock.ValidationException;
 import net.roguelogix.phosphophyllite.multiblock.modular.MultiblockControllerModule;
@@ -14,9 +17,11 @@ import net.roguelogix.phosphophyllite.registry.OnModLoad;
 import org.joml.Vector3i;
 import org.joml.Vector3ic;
 import net.roguelogix.phosphophyllite.util.NonnullDefault;
-import net.roguelogix.phosphophyllite.util.Util;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Objects;
 
 @NonnullDefault
 public interface IRectangularMultiblock<
@@ -57,19 +62,75 @@ public interface IRectangularMultiblock<
     default void rectangularBlockValidated(Block block) {
     }
     
+    /**
+     * Only called off the server thread if {@link #threadSafeValidation()}, as are the part blocks' isGoodFor checks and the block type validator
+     * Large thread safe multiblocks are validated on worker threads, see multiblock.parallelValidationMinVolume
+     */
     default boolean allowedInteriorBlock(Block block) {
         return false;
     }
     
+    @Override
+    default long validationRulesHash() {
+        final long shapeHash = Objects.hash(minSize(), maxSize(), orientationAgnostic(), xzAgnostic(), cornerSpecificValidation(), frameSpecificValidation());
+        return IValidatedMultiblock.super.validationRulesHash() * 31 + shapeHash;
+    }
+    
     final class Module<
             TileType extends BlockEntity & IRectangularMultiblockTile<TileType, BlockType, ControllerType>,
             BlockType extends Block & IRectangularMultiblockBlock,
             ControllerType extends MultiblockController<TileType, BlockType, ControllerType> & IRectangularMultiblock<TileType, BlockType, ControllerType>
             > extends MultiblockControllerModule<TileType, BlockType, ControllerType> implements IValidatedMultiblockControllerModule {
         
+        // parts added or removed past this since the last walk, and the next one is a full walk
+        private static final int MAX_DIRTY_POSITIONS = 4096;
+        
         private boolean cornerSpecificValidation;
         private boolean frameSpecificValidation;
-        private int foundMultiblockBlocks;
+        
+        private final RectangularWalk walk = new RectangularWalk(new RectangularWalk.Rules() {
+            @Nullable
+            @Override
+            public String rejectingRole(Block block, int extremes) {
+                return Module.this.rejectingRole(block, extremes);
+            }
+            
+            @Override
+            public boolean isPart(@Nullable Block block) {
+                return Module.this.isPart(block);
+            }
+            
+            @Override
+            public void blockValidated(Block block) {
+                controller.rectangularBlockValidated(block);
+            }
+        });
+        // the walk's cache is of the last complete walk, and good for the next validation
+        private boolean cacheValid = false;
+        // the walk this validation did can become the cache, only once every stage of every module passed
+        private boolean cacheFilled = false;
+        private int cachedFullValidationRequests;
+        private final LongOpenHashSet dirtyPositions = new LongOpenHashSet();
+        private boolean tooManyDirtyPositions = false;
+        private boolean replayBlockCallbacks;
+        
+        // copied in prepareValidation, the stages only read these and never the controller or level, so they can run off thread
+        private final Vector3i validationMin = new Vector3i();
+        private final Vector3i validationMax = new Vector3i();
+        private int validationBlockCount;
+        private int validationFullRequests;
+        // positions to re-check and what was in them when validating incrementally
+        @Nullable
+        private LongArrayList recheckPositions;
+        @Nullable
+        private Block[] recheckBlocks;
+        // sections for a full walk, copies if anything may read them off thread, null if the walk has to go through the level itself
+        @Nullable
+        private ObjectArrayList<RectangularWalk.SectionTask> validationSections;
+        // worker threads help walk the sections, only for controllers that declared their validation callbacks thread safe
+        private boolean parallelSections;
+        // reused by every stage 1 run, only the first one to three are used unless orientation agnostic
+        private final Vector3i[] orientations = {new Vector3i(), new Vector3i(), new Vector3i(), new Vector3i(), new Vector3i(), new Vector3i()};
         
         @OnModLoad
         public static void register() {
@@ -80,10 +141,117 @@ public interface IRectangularMultiblock<
             super(controller);
         }
         
+        @Override
+        public boolean threadSafeUpdate() {
+            return true;
+        }
+        
+        @Override
+        public boolean canSleep() {
+            return true;
+        }
+        
+        @Override
+        public void postModuleConstruction() {
+            try {
+                replayBlockCallbacks = controller.getClass().getMethod("rectangularBlockValidated", Block.class).getDeclaringClass() != IRectangularMultiblock.class;
+            } catch (NoSuchMethodException e) {
+                replayBlockCallbacks = true;
+            }
+        }
+        
+        @Override
+        public void onPartAdded(@Nonnull TileType tile) {
+            markDirty(tile);
+        }
+        
+        @Override
+        public void onPartRemoved(@Nonnull TileType tile) {
+            markDirty(tile);
+        }
+        
+        private void markDirty(TileType tile) {
+            if (tooManyDirtyPositions) {
+                return;
+            }
+            dirtyPositions.add(tile.getBlockPos().asLong());
+            if (dirtyPositions.size() > MAX_DIRTY_POSITIONS) {
+                tooManyDirtyPositions = true;
+                dirtyPositions.clear();
+            }
+        }
+        
+        @Override
+        public void merge(ControllerType other) {
+            cacheValid = false;
+        }
+        
+        @Override
+        public void split(List<ControllerType> others) {
+            cacheValid = false;
+        }
+        
+        @Override
+        public boolean prepareValidation(boolean offThread) {
+            validationMin.set(controller.min());
+            validationMax.set(controller.max());
+            validationBlockCount = controller.blocks.size();
+            validationFullRequests = controller.validatedModule().fullValidationRequests();
+            cornerSpecificValidation = controller.cornerSpecificValidation();
+            frameSpecificValidation = controller.frameSpecificValidation();
+            recheckPositions = null;
+            recheckBlocks = null;
+            validationSections = null;
+            if (canValidateIncrementally()) {
+                final var positions = new LongArrayList(dirtyPositions.size() + walk.nonPartPositions().size());
+                addInBox(positions, dirtyPositions);
+                addInBox(positions, walk.nonPartPositions());
+                dirtyPositions.clear();
+                recheckPositions = positions;
+                recheckBlocks = RectangularWalk.blocks(controller.levelAccess, positions);
+                return true;
+            }
+            dirtyPositions.clear();
+            tooManyDirtyPositions = false;
+            final long volume = RectangularWalk.volume(validationMin, validationMax);
+            final int parallelMinVolume = Phosphophyllite.CONFIG.multiblock.parallelValidationMinVolume;
+            parallelSections = controller.threadSafeValidation() && parallelMinVolume > 0 && volume >= parallelMinVolume;
+            if (volume > RectangularWalk.MAX_CACHED_VOLUME && replayBlockCallbacks) {
+                // callbacks are replayed from the cache, so without one they have to be called in a walk of the level itself
+                return false;
+            }
+            // inline walks read the level's own sections, nothing changes them until the walk is done
+            validationSections = RectangularWalk.sections(controller.levelAccess, validationMin, validationMax, offThread || parallelSections);
+            return true;
+        }
+        
+        private void addInBox(LongArrayList positions, LongOpenHashSet toAdd) {
+            final var iterator = toAdd.iterator();
+            while (iterator.hasNext()) {
+                final long packedPos = iterator.nextLong();
+                final int x = BlockPos.getX(packedPos);
+                final int y = BlockPos.getY(packedPos);
+                final int z = BlockPos.getZ(packedPos);
+                if (x < validationMin.x || y < validationMin.y || z < validationMin.z || x > validationMax.x || y > validationMax.y || z > validationMax.z) {
+                    continue;
+                }
+                positions.add(packedPos);
+            }
+        }
+        
+        @Override
+        public void validationDiscarded() {
+            cacheValid = false;
+            cacheFilled = false;
+            recheckPositions = null;
+            recheckBlocks = null;
+            validationSections = null;
+        }
+        
         @Override
         public void validateStage1() throws ValidationException {
-            final var min = controller.min();
-            final var max = controller.max();
+            final var min = validationMin;
+            final var max = validationMax;
             int minX = min.x();
             int minY = min.y();
             int minZ = min.z();
@@ -91,31 +259,38 @@ public interface IRectangularMultiblock<
             int maxY = max.y();
             int maxZ = max.z();
             
-            final var allowedOrientations = new Vector3i[controller.orientationAgnostic() ? 6 : controller.xzAgnostic() ? 2 : 1];
+            final int sizeX = maxX - minX + 1;
+            final int sizeY = maxY - minY + 1;
+            final int sizeZ = maxZ - minZ + 1;
+            final var allowedOrientations = orientations;
+            final int orientationCount;
             
-            // TODO: garbage, less of it plz
             if (controller.orientationAgnostic()) {
-                allowedOrientations[0] = new Vector3i(maxX - minX + 1, maxY - minY + 1, maxZ - minZ + 1);
-                allowedOrientations[1] = new Vector3i(maxX - minX + 1, maxZ - minZ + 1, maxY - minY + 1);
+                allowedOrientations[0].set(sizeX, sizeY, sizeZ);
+                allowedOrientations[1].set(sizeX, sizeZ, sizeY);
                 
-                allowedOrientations[2] = new Vector3i(maxY - minY + 1, maxX - minX + 1, maxZ - minZ + 1);
-                allowedOrientations[3] = new Vector3i(maxY - minY + 1, maxZ - minZ + 1, maxX - minX + 1);
+                allowedOrientations[2].set(sizeY, sizeX, sizeZ);
+                allowedOrientations[3].set(sizeY, sizeZ, sizeX);
                 
-                allowedOrientations[4] = new Vector3i(maxZ - minZ + 1, maxX - minX + 1, maxY - minY + 1);
-                allowedOrientations[5] = new Vector3i(maxZ - minZ + 1, maxY - minY + 1, maxX - minX + 1);
+                allowedOrientations[4].set(sizeZ, sizeX, sizeY);
+                allowedOrientations[5].set(sizeZ, sizeY, sizeX);
+                orientationCount = 6;
             } else if (controller.xzAgnostic()) {
                 // TODO: these explode
-                allowedOrientations[0] = new Vector3i(maxX - minX + 1, maxY - minY + 1, maxZ - minZ + 1);
-                allowedOrientations[1] = new Vector3i(maxZ - minZ + 1, maxY - minY + 1, maxX - minX + 1);
+                allowedOrientations[0].set(sizeX, sizeY, sizeZ);
+                allowedOrientations[1].set(sizeZ, sizeY, sizeX);
+                orientationCount = 2;
             } else {
-                allowedOrientations[0] = new Vector3i(maxX - minX + 1, maxY - minY + 1, maxZ - minZ + 1);
+                allowedOrientations[0].set(sizeX, sizeY, sizeZ);
+                orientationCount = 1;
             }
             
             final var minSize = controller.minSize();
             final var maxSize = controller.maxSize();
             
-            Vector3i dimensions = null;
-            for (Vector3i allowedOrientation : allowedOrientations) {
+            boolean fits = false;
+            for (int i = 0; i < orientationCount; i++) {
+                final var allowedOrientation = allowedOrientations[i];
                 if (minSize != null) {
                     if (
                             allowedOrientation.x < minSize.x() ||
@@ -134,17 +309,15 @@ public interface IRectangularMultiblock<
                         continue;
                     }
                 }
-                dimensions = allowedOrientation;
+                fits = true;
                 break;
             }
             // dimension check failed in all orientations
-            if (dimensions == null) {
-                final var minSizenn = minSize != null ? minSize : new Vector3i();
-                final var maxSizenn = maxSize != null ? maxSize : new Vector3i();
-                throw new ValidationException(Component.translatable("multiblock.error.phosphophyllite.dimensions",
-                        allowedOrientations[0].x, allowedOrientations[0].y, allowedOrientations[0].z,
-                        minSizenn.x(), minSizenn.y(), minSizenn.z(),
-                        maxSizenn.x(), maxSizenn.y(), maxSizenn.z()));
+            if (!fits) {
+                throw ValidationException.of("multiblock.error.phosphophyllite.dimensions",
+                        sizeX, sizeY, sizeZ,
+                        minSize != null ? minSize.x() : 0, minSize != null ? minSize.y() : 0, minSize != null ? minSize.z() : 0,
+                        maxSize != null ? maxSize.x() : 0, maxSize != null ? maxSize.y() : 0, maxSize != null ? maxSize.z() : 0);
             }
             // or it didnt, at this point i dont really know, and you dont either, works(tm)
         }
@@ -152,89 +325,127 @@ public interface IRectangularMultiblock<
         @Override
         public void validateStage2() throws ValidationException {
             controller.rectangularValidationStarted();
-            cornerSpecificValidation = controller.cornerSpecificValidation();
-            frameSpecificValidation = controller.frameSpecificValidation();
-            foundMultiblockBlocks = 0;
-            Util.chunkCachedBlockStateIteration(controller.min(), controller.max(), controller.level, this::blockValidation);
+            if (recheckPositions != null) {
+                validateIncrementally();
+                return;
+            }
+            cacheValid = false;
+            cacheFilled = false;
+            walk.begin(validationMin, validationMax);
+            cachedFullValidationRequests = validationFullRequests;
+            final var sections = validationSections;
+            validationSections = null;
+            if (sections != null) {
+                walk.walkSections(sections, parallelSections);
+                if (replayBlockCallbacks) {
+                    walk.replay();
+                }
+            } else {
+                // only when validating inline, see prepareValidation
+                walk.walkLevel(controller.levelAccess);
+            }
+            cacheFilled = walk.cached(validationMin, validationMax);
         }
         
         @Override
-        public void validateStage3() throws ValidationException {
-            if (foundMultiblockBlocks != controller.blocks.size()) {
-                throw new ValidationException(Component.translatable("multiblock.error.phosphophyllite.mismatched_block_count", foundMultiblockBlocks, controller.blocks.size()));
-            }
+        public void validationFinished(@Nullable ValidationException error) {
+            cacheValid = error == null && cacheFilled;
+            cacheFilled = false;
         }
         
-        private void blockValidation(BlockState blockState, Vector3ic pos) throws ValidationException {
-            final var min = controller.min();
-            final var max = controller.max();
-            int minX = min.x();
-            int minY = min.y();
-            int minZ = min.z();
-            int maxX = max.x();
-            int maxY = max.y();
-            int maxZ = max.z();
-            
-            Block block = blockState.getBlock();
-            int extremes = 0;
-            if (pos.x() == minX || pos.x() == maxX) {
-                extremes++;
+        /**
+         * Only what changed needs checking if the bounds are the same as the last complete walk, and nothing but parts changed since
+         * Non-part positions are always re-checked, the controller doesn't hear about those changing
+         */
+        private boolean canValidateIncrementally() {
+            if (!cacheValid || tooManyDirtyPositions || !walk.cached(validationMin, validationMax)) {
+                return false;
             }
-            if (pos.y() == minY || pos.y() == maxY) {
-                extremes++;
+            if (cachedFullValidationRequests != validationFullRequests) {
+                return false;
             }
-            if (pos.z() == minZ || pos.z() == maxZ) {
-                extremes++;
+            // past this a walk is cheaper than looking up every position on its own
+            return (dirtyPositions.size() + walk.nonPartPositions().size()) * 8L <= walk.cachedVolume();
+        }
+        
+        private void validateIncrementally() throws ValidationException {
+            final var positions = recheckPositions;
+            final var blocks = recheckBlocks;
+            recheckPositions = null;
+            recheckBlocks = null;
+            assert positions != null && blocks != null;
+            // cache is only good again if every check passes
+            cacheValid = false;
+            cacheFilled = false;
+            walk.recheck(positions, blocks);
+            if (replayBlockCallbacks) {
+                walk.replay();
             }
+            cacheFilled = true;
+        }
+        
+        private boolean isPart(@Nullable Block block) {
+            // anything accepted that is one of ours is counted, see RectangularWalk
+            return block instanceof IRectangularMultiblockBlock && controller.blockTypeValidator.test(block);
+        }
+        
+        @Override
+        public void validateStage3() throws ValidationException {
+            if (walk.foundBlocks() != validationBlockCount) {
+                throw ValidationException.of("multiblock.error.phosphophyllite.mismatched_block_count", walk.foundBlocks(), validationBlockCount);
+            }
+        }
+        
+        /**
+         * @return the role that doesn't allow the block at a position with this many box extremes, null if it's allowed
+         */
+        @Nullable
+        private String rejectingRole(Block block, int extremes) {
             // use of old switch for case to case rolling is intentional
             switch (extremes) {
                 case 3: {
                     if (cornerSpecificValidation) {
                         if (block instanceof IRectangularMultiblockBlock && controller.blockTypeValidator.test(block)) {
                             if (((IRectangularMultiblockBlock) block).isGoodForCorner()) {
-                                foundMultiblockBlocks++;
-                                break;
+                                return null;
                             }
                         }
-                        throw new InvalidBlock(block, pos, "corner");
+                        return "corner";
                     }
                 }
                 case 2: {
                     if (frameSpecificValidation) {
                         if (block instanceof IRectangularMultiblockBlock && controller.blockTypeValidator.test(block)) {
                             if (((IRectangularMultiblockBlock) block).isGoodForFrame()) {
-                                foundMultiblockBlocks++;
-                                break;
+                                return null;
                             }
                         }
-                        throw new InvalidBlock(block, pos, "frame");
+                        return "frame";
                     }
                 }
                 case 1: {
                     if (block instanceof IRectangularMultiblockBlock && controller.blockTypeValidator.test(block)) {
                         if (((IRectangularMultiblockBlock) block).isGoodForExterior()) {
-                            foundMultiblockBlocks++;
-                            break;
+                            return null;
                         }
                     }
-                    throw new InvalidBlock(block, pos, "exterior");
+                    return "exterior";
                 }
                 default: {
                     if (block instanceof IRectangularMultiblockBlock && controller.blockTypeValidator.test(block)) {
                         if (((IRectangularMultiblockBlock) block).isGoodForInterior()) {
-                            foundMultiblockBlocks++;
-                            break;
+                            return null;
                         }
-                        throw new InvalidBlock(block, pos, "interior");
+                        return "interior";
                     }
                     
                     if (!controller.allowedInteriorBlock(block)) {
-                        throw new InvalidBlock(block, pos, "interior");
+                        return "interior";
                     }
+                    return null;
                 }
             }
-            controller.rectangularBlockValidated(block);
         }
         
     }
-}
+}
\ No newline at end of file
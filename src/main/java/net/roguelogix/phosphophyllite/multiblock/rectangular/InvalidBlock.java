@@ -6,19 +6,63 @@ import net.roguelogix.phosphophyllite.multiblock.ValidationException;
 import net.roguelogix.phosphophyllite.util.NonnullDefault;
 import org.joml.Vector3ic;
 
+import javax.annotation.Nullable;
+
 @NonnullDefault
 @SuppressWarnings("unused")
 public class InvalidBlock extends ValidationException {
     
+    @Nullable
+    private final Block block;
+    private final int x, y, z;
+    @Nullable
+    private final String multiblockPosition;
+    
     public InvalidBlock(String s) {
         super(s);
+        block = null;
+        x = y = z = 0;
+        multiblockPosition = null;
     }
     
+    /**
+     * Stackless, the position is copied so a reused vector can be passed
+     */
     public InvalidBlock(Block block, Vector3ic worldPosition, String multiblockPosition) {
-        super(Component.translatable(
-                "multiblock.error.phosphophyllite.invalid_block." + multiblockPosition,
+        super(null, NO_ARGS);
+        this.block = block;
+        this.x = worldPosition.x();
+        this.y = worldPosition.y();
+        this.z = worldPosition.z();
+        this.multiblockPosition = multiblockPosition;
+    }
+    
+    @Nullable
+    public Block block() {
+        return block;
+    }
+    
+    @Nullable
+    public String multiblockPosition() {
+        return multiblockPosition;
+    }
+    
+    @Override
+    public String getMessage() {
+        if (multiblockPosition == null) {
+            return super.getMessage();
+        }
+        return "multiblock.error.phosphophyllite.invalid_block." + multiblockPosition;
+    }
+    
+    @Override
+    protected Component buildTextComponent() {
+        if (block == null) {
+            return super.buildTextComponent();
+        }
+        return Component.translatable(
+                getMessage(),
                 Component.translatable(block.getDescriptionId()),
-                "(x: " + worldPosition.x() + "; y: " + worldPosition.y() + "; z: " + worldPosition.z() + ")")
-        );
+                "(x: " + x + "; y: " + y + "; z: " + z + ")");
     }
 }
@@ -0,0 +1,523 @@
+package net.roguelogix.phosphophyllite.multiblock.rectangular;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.roguelogix.phosphophyllite.multiblock.MultiblockLevelAccess;
+import net.roguelogix.phosphophyllite.multiblock.ValidationException;
+import net.roguelogix.phosphophyllite.threading.Event;
+import net.roguelogix.phosphophyllite.threading.Queues;
+import net.roguelogix.phosphophyllite.util.NonnullDefault;
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The block walk of rectangular validation, every position in a box is checked against its place in the box
+ * What is allowed where, and what counts as a part, comes from {@link Rules}, so this knows nothing of the controller
+ * {@link IRectangularMultiblock.Module} walks with its controller's rules, the jmh benchmarks with their own
+ * <p>
+ * Boxes up to {@link #MAX_CACHED_VOLUME} keep the block accepted at each position, so a later walk of the same box can re-check only what changed
+ */
+@NonnullDefault
+final class RectangularWalk {
+    
+    // boxes bigger than this are always walked in full, the cache would be too big
+    static final int MAX_CACHED_VOLUME = 1 << 21;
+    
+    interface Rules {
+        /**
+         * @return the role that doesn't allow the block at a position with this many box extremes (0 interior, 1 exterior, 2 frame, 3 corner), null if it's allowed
+         */
+        @Nullable
+        String rejectingRole(Block block, int extremes);
+        
+        /**
+         * @return if the block is a part, counted towards the controller's block count
+         */
+        boolean isPart(@Nullable Block block);
+        
+        void blockValidated(Block block);
+    }
+    
+    private final Rules rules;
+    // box of the last walk started, a position's classification follows from its place in it
+    private final Vector3i min = new Vector3i();
+    private final Vector3i max = new Vector3i();
+    private int foundBlocks;
+    // block accepted at each position in the box, x fastest then z then y
+    @Nullable
+    private Block[] acceptedBlocks;
+    // positions holding something other than a part, those can change without the controller hearing about it
+    private final LongOpenHashSet nonPartPositions = new LongOpenHashSet();
+    
+    RectangularWalk(Rules rules) {
+        this.rules = rules;
+    }
+    
+    static long volume(Vector3ic min, Vector3ic max) {
+        return (long) (max.x() - min.x() + 1) * (max.y() - min.y() + 1) * (max.z() - min.z() + 1);
+    }
+    
+    /**
+     * Part blocks found by the last walk, and the re-checks since
+     */
+    int foundBlocks() {
+        return foundBlocks;
+    }
+    
+    LongOpenHashSet nonPartPositions() {
+        return nonPartPositions;
+    }
+    
+    /**
+     * @return if the last walk was of this box, and kept what it accepted at every position
+     */
+    boolean cached(Vector3ic min, Vector3ic max) {
+        return acceptedBlocks != null && this.min.equals(min) && this.max.equals(max);
+    }
+    
+    int cachedVolume() {
+        return acceptedBlocks == null ? 0 : acceptedBlocks.length;
+    }
+    
+    /**
+     * Starts a full walk of the box, whatever was cached from the last one is dropped
+     */
+    void begin(Vector3ic min, Vector3ic max) {
+        this.min.set(min);
+        this.max.set(max);
+        foundBlocks = 0;
+        nonPartPositions.clear();
+        final long volume = volume(min, max);
+        if (volume <= MAX_CACHED_VOLUME) {
+            if (acceptedBlocks == null || acceptedBlocks.length != volume) {
+                acceptedBlocks = new Block[(int) volume];
+            }
+        } else {
+            acceptedBlocks = null;
+        }
+    }
+    
+    static ObjectArrayList<SectionTask> sections(MultiblockLevelAccess level, Vector3ic min, Vector3ic max, boolean copy) {
+        final var sections = new ObjectArrayList<SectionTask>();
+        // same order as Util.chunkCachedBlockStateIteration
+        for (int sectionZ = min.z() >> 4; sectionZ <= max.z() >> 4; sectionZ++) {
+            for (int sectionX = min.x() >> 4; sectionX <= max.x() >> 4; sectionX++) {
+                for (int sectionY = min.y() >> 4; sectionY <= max.y() >> 4; sectionY++) {
+                    final var states = copy ? level.copySection(sectionX, sectionY, sectionZ) : level.section(sectionX, sectionY, sectionZ);
+                    sections.add(new SectionTask(sectionX, sectionY, sectionZ, states));
+                }
+            }
+        }
+        return sections;
+    }
+    
+    /**
+     * What is at each position now, for {@link #recheck(LongArrayList, Block[])}
+     */
+    static Block[] blocks(MultiblockLevelAccess level, LongArrayList positions) {
+        final var blocks = new Block[positions.size()];
+        for (int i = 0; i < positions.size(); i++) {
+            final long packedPos = positions.getLong(i);
+            final int x = BlockPos.getX(packedPos);
+            final int y = BlockPos.getY(packedPos);
+            final int z = BlockPos.getZ(packedPos);
+            final var states = level.section(x >> 4, y >> 4, z >> 4);
+            // unloaded chunks and empty sections read as air, same as in a full walk
+            blocks[i] = states == null ? Blocks.AIR : states.get(x & 15, y & 15, z & 15).getBlock();
+        }
+        return blocks;
+    }
+    
+    /**
+     * Walks the level itself, for boxes too big to cache when the rules want a callback for every block
+     */
+    void walkLevel(MultiblockLevelAccess level) throws ValidationException {
+        level.forEachBlockState(min, max, this::blockValidation);
+    }
+    
+    private void blockValidation(BlockState blockState, Vector3ic pos) throws ValidationException {
+        final var block = blockState.getBlock();
+        if (classify(block, pos)) {
+            foundBlocks++;
+        } else if (acceptedBlocks != null) {
+            nonPartPositions.add(BlockPos.asLong(pos.x(), pos.y(), pos.z()));
+        }
+        if (acceptedBlocks != null) {
+            acceptedBlocks[cacheIndex(pos)] = block;
+        }
+        rules.blockValidated(block);
+    }
+    
+    /**
+     * Sections are classified by whatever thread claims them, this one included, worker threads only help if parallel
+     * Results are reduced in the same section order as the serial walk, so the first failure is the same one it would have thrown
+     */
+    void walkSections(ObjectArrayList<SectionTask> sections, boolean parallel) throws ValidationException {
+        final var walk = new SectionWalk(sections);
+        final int helpers = parallel ? Math.min(sections.size(), Runtime.getRuntime().availableProcessors()) - 1 : 0;
+        for (int i = 0; i < helpers; i++) {
+            Queues.offThread.enqueueUntracked(walk);
+        }
+        walk.run();
+        walk.awaitClaimedSections();
+        for (int i = 0; i < sections.size(); i++) {
+            final var section = sections.get(i);
+            if (section.failure instanceof ValidationException validationException) {
+                throw validationException;
+            } else if (section.failure instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            foundBlocks += section.foundBlocks;
+            nonPartPositions.addAll(section.nonPartPositions);
+        }
+    }
+    
+    /**
+     * Section walks don't call back per block, so they're replayed from the cache, positions a walk never reached are skipped
+     */
+    void replay() {
+        if (acceptedBlocks == null) {
+            return;
+        }
+        for (final var block : acceptedBlocks) {
+            if (block != null) {
+                rules.blockValidated(block);
+            }
+        }
+    }
+    
+    /**
+     * Only the given positions are checked, everything else is as the cache has it
+     * The cache is left partly updated if this throws, so start a full walk after a failure
+     *
+     * @param blocks: what is in each position now, see {@link #blocks(MultiblockLevelAccess, LongArrayList)}
+     */
+    void recheck(LongArrayList positions, Block[] blocks) throws ValidationException {
+        assert acceptedBlocks != null;
+        final var pos = new Vector3i();
+        for (int i = 0; i < positions.size(); i++) {
+            final long packedPos = positions.getLong(i);
+            pos.set(BlockPos.getX(packedPos), BlockPos.getY(packedPos), BlockPos.getZ(packedPos));
+            recheckBlock(blocks[i], pos);
+        }
+    }
+    
+    private void recheckBlock(Block block, Vector3ic pos) throws ValidationException {
+        assert acceptedBlocks != null;
+        final int index = cacheIndex(pos);
+        final var oldBlock = acceptedBlocks[index];
+        if (block == oldBlock) {
+            return;
+        }
+        final boolean part = classify(block, pos);
+        if (rules.isPart(oldBlock)) {
+            foundBlocks--;
+        }
+        final long packedPos = BlockPos.asLong(pos.x(), pos.y(), pos.z());
+        if (part) {
+            foundBlocks++;
+            nonPartPositions.remove(packedPos);
+        } else {
+            nonPartPositions.add(packedPos);
+        }
+        acceptedBlocks[index] = block;
+    }
+    
+    private void sectionValidation(SectionTask section) throws ValidationException {
+        final int[] rangeMin = new int[3];
+        final int[] rangeMax = new int[3];
+        for (int axis = 0; axis < 3; axis++) {
+            final int sectionMin = section.origin[axis];
+            rangeMin[axis] = Math.max(sectionMin, min.get(axis));
+            rangeMax[axis] = Math.min(sectionMin + 15, max.get(axis));
+        }
+        rangeValidation(section, rangeMin, rangeMax, 0);
+        final var rejectedBlock = section.rejectedBlock;
+        final var rejectedRole = section.rejectedRole;
+        if (rejectedBlock != null && rejectedRole != null) {
+            final int index = section.rejectedIndex;
+            final var pos = new Vector3i(section.origin[0] + (index & 15), section.origin[1] + (index >> 8), section.origin[2] + ((index >> 4) & 15));
+            throw new InvalidBlock(rejectedBlock, pos, rejectedRole);
+        }
+    }
+    
+    /**
+     * If the palette isn't allowed everywhere in the range, the range is split into its box edge planes and what's between them, one axis at a time
+     * Those have fewer roles each, so a section with casing on one side and interior on the other is still accepted in bulk
+     */
+    private void rangeValidation(SectionTask section, int[] rangeMin, int[] rangeMax, int axis) {
+        final int extremesMask = extremesInRange(rangeMin, rangeMax);
+        if (paletteAccepted(section.states, extremesMask)) {
+            acceptedRange(section, rangeMin, rangeMax);
+            return;
+        }
+        // splitting wont make the roles any narrower
+        if (Integer.bitCount(extremesMask) == 1 || axis == 3) {
+            blockRangeValidation(section, rangeMin, rangeMax);
+            return;
+        }
+        final int low = rangeMin[axis];
+        final int high = rangeMax[axis];
+        int insideLow = low;
+        int insideHigh = high;
+        final boolean lowEdge = low == min.get(axis);
+        if (lowEdge) {
+            insideLow++;
+        }
+        final boolean highEdge = high == max.get(axis) && high >= insideLow;
+        if (highEdge) {
+            insideHigh--;
+        }
+        if (lowEdge) {
+            subRangeValidation(section, rangeMin, rangeMax, axis, low, low);
+        }
+        if (insideLow <= insideHigh) {
+            subRangeValidation(section, rangeMin, rangeMax, axis, insideLow, insideHigh);
+        }
+        if (highEdge) {
+            subRangeValidation(section, rangeMin, rangeMax, axis, high, high);
+        }
+    }
+    
+    private void subRangeValidation(SectionTask section, int[] rangeMin, int[] rangeMax, int axis, int low, int high) {
+        final int[] subRangeMin = rangeMin.clone();
+        final int[] subRangeMax = rangeMax.clone();
+        subRangeMin[axis] = low;
+        subRangeMax[axis] = high;
+        rangeValidation(section, subRangeMin, subRangeMax, axis + 1);
+    }
+    
+    /**
+     * Every count of box extremes (0 interior, 1 exterior, 2 frame, 3 corner) that a position in the range can have, as a bitmask
+     */
+    private int extremesInRange(int[] rangeMin, int[] rangeMax) {
+        int extremesMask = 1;
+        for (int axis = 0; axis < 3; axis++) {
+            final boolean onEdge = rangeMin[axis] == min.get(axis) || rangeMax[axis] == max.get(axis);
+            final boolean inside = Math.max(rangeMin[axis], min.get(axis) + 1) <= Math.min(rangeMax[axis], max.get(axis) - 1);
+            extremesMask = (inside ? extremesMask : 0) | (onEdge ? extremesMask << 1 : 0);
+        }
+        return extremesMask;
+    }
+    
+    /**
+     * Palettes can hold states no longer in the section, those only ever send it down the block by block path
+     *
+     * @return if every state in the palette is allowed at every position the mask covers
+     */
+    private boolean paletteAccepted(@Nullable PalettedContainer<BlockState> states, int extremesMask) {
+        if (states == null) {
+            return acceptedAtAll(Blocks.AIR, extremesMask);
+        }
+        return !states.maybeHas(state -> !acceptedAtAll(state.getBlock(), extremesMask));
+    }
+    
+    private boolean acceptedAtAll(Block block, int extremesMask) {
+        for (int extremes = 0; extremes < 4; extremes++) {
+            if ((extremesMask & (1 << extremes)) != 0 && rules.rejectingRole(block, extremes) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Every block in the range is known to be allowed, only counting and the position cache are left
+     */
+    private void acceptedRange(SectionTask section, int[] rangeMin, int[] rangeMax) {
+        final var states = section.states;
+        if (acceptedBlocks == null) {
+            if (states == null) {
+                // all air, nothing to count
+                return;
+            }
+            if (isWholeSection(section, rangeMin, rangeMax)) {
+                states.count((state, count) -> {
+                    if (rules.isPart(state.getBlock())) {
+                        section.foundBlocks += count;
+                    }
+                });
+                return;
+            }
+        }
+        final var airBlock = Blocks.AIR;
+        @Nullable
+        Block lastBlock = null;
+        boolean lastPart = false;
+        // PalettedContainers are indexed [y][z][x]
+        for (int y = rangeMin[1]; y <= rangeMax[1]; y++) {
+            for (int z = rangeMin[2]; z <= rangeMax[2]; z++) {
+                for (int x = rangeMin[0]; x <= rangeMax[0]; x++) {
+                    final var block = states == null ? airBlock : states.get(x & 15, y & 15, z & 15).getBlock();
+                    // runs of the same block are the common case
+                    if (block != lastBlock) {
+                        lastBlock = block;
+                        lastPart = rules.isPart(block);
+                    }
+                    acceptedBlock(section, block, lastPart, x, y, z);
+                }
+            }
+        }
+    }
+    
+    private void blockRangeValidation(SectionTask section, int[] rangeMin, int[] rangeMax) {
+        final var states = section.states;
+        final var airBlock = Blocks.AIR;
+        // PalettedContainers are indexed [y][z][x]
+        for (int y = rangeMin[1]; y <= rangeMax[1]; y++) {
+            for (int z = rangeMin[2]; z <= rangeMax[2]; z++) {
+                for (int x = rangeMin[0]; x <= rangeMax[0]; x++) {
+                    final var block = states == null ? airBlock : states.get(x & 15, y & 15, z & 15).getBlock();
+                    final var role = rules.rejectingRole(block, extremes(x, y, z));
+                    if (role != null) {
+                        // sub ranges aren't checked in walk order, so keep whichever failure the walk would have hit first
+                        final int index = ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+                        if (index < section.rejectedIndex) {
+                            section.rejectedIndex = index;
+                            section.rejectedBlock = block;
+                            section.rejectedRole = role;
+                        }
+                        return;
+                    }
+                    acceptedBlock(section, block, rules.isPart(block), x, y, z);
+                }
+            }
+        }
+    }
+    
+    private void acceptedBlock(SectionTask section, Block block, boolean part, int x, int y, int z) {
+        if (part) {
+            section.foundBlocks++;
+        } else if (acceptedBlocks != null) {
+            section.nonPartPositions.add(BlockPos.asLong(x, y, z));
+        }
+        if (acceptedBlocks != null) {
+            // sections don't overlap, so neither do their writes
+            acceptedBlocks[cacheIndex(x, y, z)] = block;
+        }
+    }
+    
+    private static boolean isWholeSection(SectionTask section, int[] rangeMin, int[] rangeMax) {
+        for (int axis = 0; axis < 3; axis++) {
+            if (rangeMin[axis] != section.origin[axis] || rangeMax[axis] != section.origin[axis] + 15) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * @return if the block is a part, counted towards the controller's block count
+     * @throws ValidationException if the block isn't allowed at this position
+     */
+    private boolean classify(Block block, Vector3ic pos) throws ValidationException {
+        final var role = rules.rejectingRole(block, extremes(pos.x(), pos.y(), pos.z()));
+        if (role != null) {
+            throw new InvalidBlock(block, pos, role);
+        }
+        // only parts are allowed outside of the interior, and any part that is allowed is counted
+        return rules.isPart(block);
+    }
+    
+    private int extremes(int x, int y, int z) {
+        int extremes = 0;
+        if (x == min.x || x == max.x) {
+            extremes++;
+        }
+        if (y == min.y || y == max.y) {
+            extremes++;
+        }
+        if (z == min.z || z == max.z) {
+            extremes++;
+        }
+        return extremes;
+    }
+    
+    private int cacheIndex(Vector3ic pos) {
+        return cacheIndex(pos.x(), pos.y(), pos.z());
+    }
+    
+    private int cacheIndex(int x, int y, int z) {
+        final int sizeX = max.x - min.x + 1;
+        final int sizeZ = max.z - min.z + 1;
+        return ((y - min.y) * sizeZ + (z - min.z)) * sizeX + (x - min.x);
+    }
+    
+    static final class SectionTask {
+        // block coordinates of the section's lowest corner, x y z
+        private final int[] origin;
+        @Nullable
+        private final PalettedContainer<BlockState> states;
+        private int foundBlocks = 0;
+        private final LongArrayList nonPartPositions = new LongArrayList();
+        // first rejected block in [y][z][x] order
+        private int rejectedIndex = Integer.MAX_VALUE;
+        @Nullable
+        private Block rejectedBlock;
+        @Nullable
+        private String rejectedRole;
+        @Nullable
+        private Exception failure;
+        
+        private SectionTask(int x, int y, int z, @Nullable PalettedContainer<BlockState> states) {
+            this.origin = new int[]{x << 4, y << 4, z << 4};
+            this.states = states;
+        }
+    }
+    
+    /**
+     * Sections are claimed one at a time, the calling thread claims them too
+     * So it never waits on a section no thread has started, even if every worker is busy with something else
+     */
+    private final class SectionWalk implements Runnable {
+        private final ObjectArrayList<SectionTask> sections;
+        private final AtomicInteger nextSection = new AtomicInteger();
+        private final AtomicInteger unfinishedSections;
+        private final AtomicInteger firstFailedSection = new AtomicInteger(Integer.MAX_VALUE);
+        private final Event finished = new Event();
+        
+        private SectionWalk(ObjectArrayList<SectionTask> sections) {
+            this.sections = sections;
+            unfinishedSections = new AtomicInteger(sections.size());
+            if (sections.isEmpty()) {
+                finished.trigger();
+            }
+        }
+        
+        @Override
+        public void run() {
+            int index;
+            while ((index = nextSection.getAndIncrement()) < sections.size()) {
+                // anything after a failed section doesn't matter, that failure is thrown first
+                if (index < firstFailedSection.get()) {
+                    final var section = sections.get(index);
+                    try {
+                        sectionValidation(section);
+                    } catch (ValidationException | RuntimeException e) {
+                        section.failure = e;
+                        firstFailedSection.accumulateAndGet(index, Math::min);
+                    }
+                }
+                if (unfinishedSections.decrementAndGet() == 0) {
+                    finished.trigger();
+                }
+            }
+        }
+        
+        private void awaitClaimedSections() {
+            // join can return early on a spurious wakeup
+            while (!finished.ready()) {
+                finished.join();
+            }
+        }
+    }
+}
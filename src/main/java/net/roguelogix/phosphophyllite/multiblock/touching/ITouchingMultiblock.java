@@ -53,6 +53,16 @@ public interface ITouchingMultiblock<
             super(controller);
         }
         
+        @Override
+        public boolean threadSafeUpdate() {
+            return true;
+        }
+        
+        @Override
+        public boolean canSleep() {
+            return true;
+        }
+        
         @Override
         public void onStateTransition(IValidatedMultiblock.AssemblyState oldAssemblyState, IValidatedMultiblock.AssemblyState newAssemblyState) {
             switch (newAssemblyState) {
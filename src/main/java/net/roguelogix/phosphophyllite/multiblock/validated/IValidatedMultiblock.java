@@ -8,13 +8,15 @@ import net.minecraft.world.level.block.state.BlockState;
 import net.roguelogix.phosphophyllite.Phosphophyllite;
 import net.roguelogix.phosphophyllite.debug.DebugInfo;
 import net.roguelogix.phosphophyllite.multiblock.MultiblockController;
+import net.roguelogix.phosphophyllite.multiblock.StructureJournal;
 import net.roguelogix.phosphophyllite.multiblock.ValidationException;
 import net.roguelogix.phosphophyllite.multiblock.modular.IModularMultiblockController;
 import net.roguelogix.phosphophyllite.multiblock.modular.MultiblockControllerModule;
 import net.roguelogix.phosphophyllite.multiblock.modular.MultiblockControllerModuleRegistry;
 import net.roguelogix.phosphophyllite.registry.OnModLoad;
+import net.roguelogix.phosphophyllite.threading.Event;
+import net.roguelogix.phosphophyllite.threading.Queues;
 import net.roguelogix.phosphophyllite.util.NonnullDefault;
-import net.roguelogix.phosphophyllite.util.Util;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -33,6 +35,12 @@ public interface IValidatedMultiblock<
         DISASSEMBLED
     }
     
+    /**
+     * Published in {@link net.roguelogix.phosphophyllite.multiblock.ControllerSnapshot}s, keyed by {@link IValidatedMultiblock}
+     */
+    record Summary(AssemblyState assemblyState, @Nullable ValidationException lastValidationError) {
+    }
+    
     default Module<TileType, BlockType, ControllerType> validatedModule() {
         //noinspection unchecked,ConstantConditions
         return module(IValidatedMultiblock.class, Module.class);
@@ -101,6 +109,32 @@ public interface IValidatedMultiblock<
     default void disassembledTick() {
     }
     
+    /**
+     * If {@link #tick()}, {@link #disassembledTick()}, and any {@link IAssembledTickMultiblockModule}s are safe to call off the server thread
+     * Allows this multiblock to be ticked in parallel with others, world access must then go through {@link MultiblockController#runOnServerThread(Runnable)}
+     */
+    default boolean threadSafeTick() {
+        return false;
+    }
+    
+    /**
+     * If {@link #validateStage1()}, {@link #validateStage2()}, {@link #validateStage3()}, and the validation hooks of this multiblock's modules are safe to call off the server thread
+     * Allows validation to run on a worker thread while the server keeps ticking, the result is applied on a later tick
+     * The stages must not touch the level or the controller's blocks, only what the modules captured in {@link IValidatedMultiblockControllerModule#prepareValidation(boolean)}
+     * Also lets large rectangular multiblocks spread their block walk over worker threads
+     */
+    default boolean threadSafeValidation() {
+        return false;
+    }
+    
+    /**
+     * Hash of whatever this multiblock is validated against besides its blocks, such as config driven size limits
+     * Persistent multiblocks only skip validating after a reload if this is unchanged, override it if the rules can change between sessions
+     */
+    default long validationRulesHash() {
+        return 0;
+    }
+    
     class Module<
             TileType extends BlockEntity & IValidatedMultiblockTile<TileType, BlockType, ControllerType>,
             BlockType extends Block & IValidatedMultiblockBlock,
@@ -109,12 +143,21 @@ public interface IValidatedMultiblock<
         
         protected IValidatedMultiblock.AssemblyState assemblyState = IValidatedMultiblock.AssemblyState.DISASSEMBLED;
         private long updateAssemblyAtTick = Long.MAX_VALUE;
+        // requests from outside of the part hooks, where anything may have changed, not just the parts
+        private int fullValidationRequests = 0;
+        // any change that may affect validation, a pending validation started under a different count is stale
+        private int validationRequests = 0;
+        @Nullable
+        private PendingValidation pendingValidation = null;
         
         @Nullable
         protected ValidationException lastValidationError = null;
         
         private final ObjectArrayList<IAssembledTickMultiblockModule> assembledTickMultiblockModules = new ObjectArrayList<>();
         private final ObjectArrayList<IValidatedMultiblockControllerModule> validatedMultiblockModules = new ObjectArrayList<>();
+        // if a disassembled update does nothing, so an idle disassembled multiblock can be parked
+        private boolean disassembledTickIsNoop = true;
+        private Summary summary = new Summary(AssemblyState.DISASSEMBLED, null);
         
         @OnModLoad
         public static void register() {
@@ -131,65 +174,187 @@ public interface IValidatedMultiblock<
             for (final var value : modules()) {
                 if (value instanceof IAssembledTickMultiblockModule module) {
                     assembledTickMultiblockModules.add(module);
+                    disassembledTickIsNoop &= !overrides(module, IAssembledTickMultiblockModule.class, "preDisassembledTick");
+                    disassembledTickIsNoop &= !overrides(module, IAssembledTickMultiblockModule.class, "postDisassembledTick");
                 }
                 if (value instanceof IValidatedMultiblockControllerModule module) {
                     validatedMultiblockModules.add(module);
                 }
             }
+            disassembledTickIsNoop &= !overrides(controller, IValidatedMultiblock.class, "disassembledTick");
+        }
+        
+        private static boolean overrides(Object object, Class<?> declaringClass, String methodName) {
+            try {
+                return object.getClass().getMethod(methodName).getDeclaringClass() != declaringClass;
+            } catch (NoSuchMethodException e) {
+                return true;
+            }
         }
         
         @Override
         public void split(List<ControllerType> others) {
+            validationRequests++;
             updateAssemblyAtTick = Long.MIN_VALUE;
         }
         
         @Override
         public void merge(ControllerType other) {
             disassembledBlockStates();
+            validationRequests++;
             updateAssemblyAtTick = Long.MIN_VALUE;
         }
         
         @Override
         public void onPartAdded(@Nonnull TileType tile) {
-            requestValidation();
+            schedulePartValidation();
         }
         
         @Override
         public void onPartRemoved(@Nonnull TileType tile) {
-            requestValidation();
+            schedulePartValidation();
+        }
+        
+        @Override
+        public void onPartsAttached(List<TileType> tiles) {
+            schedulePartValidation();
+        }
+        
+        @Override
+        public void onPartsDetached(List<TileType> tiles) {
+            schedulePartValidation();
         }
         
         public void requestValidation() {
+            fullValidationRequests++;
+            schedulePartValidation();
+        }
+        
+        private void schedulePartValidation() {
+            validationRequests++;
             updateAssemblyAtTick = Phosphophyllite.tickNumber() + 1;
+            controller.wake();
+        }
+        
+        /**
+         * Count of validations requested by something other than parts being added or removed
+         * Validation modules that only re-check what changed should check everything if this moved since their last full check
+         */
+        public int fullValidationRequests() {
+            return fullValidationRequests;
+        }
+        
+        private final class PendingValidation implements Runnable {
+            final int requests = validationRequests;
+            final boolean offThread;
+            @Nullable
+            Event finished;
+            @Nullable
+            ValidationException error;
+            @Nullable
+            RuntimeException crash;
+            
+            PendingValidation(boolean offThread) {
+                this.offThread = offThread;
+            }
+            
+            @Override
+            public void run() {
+                try {
+                    for (final var tileTypeControllerTypeMultiblockControllerModule : validatedMultiblockModules) {
+                        tileTypeControllerTypeMultiblockControllerModule.validateStage1();
+                    }
+                    controller.validateStage1();
+                    for (final var tileTypeControllerTypeMultiblockControllerModule : validatedMultiblockModules) {
+                        tileTypeControllerTypeMultiblockControllerModule.validateStage2();
+                    }
+                    controller.validateStage2();
+                    for (final var tileTypeControllerTypeMultiblockControllerModule : validatedMultiblockModules) {
+                        tileTypeControllerTypeMultiblockControllerModule.validateStage3();
+                    }
+                    controller.validateStage3();
+                } catch (ValidationException validationError) {
+                    error = validationError;
+                } catch (RuntimeException e) {
+                    if (!offThread) {
+                        throw e;
+                    }
+                    // handed back to the updating thread, so it crashes there like an inline validation would
+                    crash = e;
+                }
+            }
+        }
+        
+        /**
+         * If an off thread validation is still running, the assembly state will be updated once it's done
+         */
+        public boolean validationPending() {
+            return pendingValidation != null;
         }
         
         private void updateAssemblyState() {
+            final var pending = pendingValidation;
+            if (pending != null) {
+                assert pending.finished != null;
+                if (!pending.finished.ready()) {
+                    return;
+                }
+                pendingValidation = null;
+                finishValidation(pending);
+            }
             if (updateAssemblyAtTick > Phosphophyllite.tickNumber()) {
                 return;
             }
+            if (controller.detachmentCheckPending()) {
+                // the structure may be about to split, validating it before that would disassemble it for nothing
+                return;
+            }
             updateAssemblyAtTick = Long.MAX_VALUE;
             for (final var tileTypeControllerTypeMultiblockControllerModule : validatedMultiblockModules) {
                 if (!tileTypeControllerTypeMultiblockControllerModule.canValidate()) {
                     return;
                 }
             }
-            lastValidationError = null;
-            try {
-                for (final var tileTypeControllerTypeMultiblockControllerModule : validatedMultiblockModules) {
-                    tileTypeControllerTypeMultiblockControllerModule.validateStage1();
-                }
-                controller.validateStage1();
-                for (final var tileTypeControllerTypeMultiblockControllerModule : validatedMultiblockModules) {
-                    tileTypeControllerTypeMultiblockControllerModule.validateStage2();
-                }
-                controller.validateStage2();
-                for (final var tileTypeControllerTypeMultiblockControllerModule : validatedMultiblockModules) {
-                    tileTypeControllerTypeMultiblockControllerModule.validateStage3();
+            for (final var module : validatedMultiblockModules) {
+                final var knownAssemblyState = module.knownAssemblyState();
+                if (knownAssemblyState != null) {
+                    lastValidationError = null;
+                    controller.journal(StructureJournal.Event.VALIDATION_SKIPPED, 0);
+                    transitionToState(knownAssemblyState);
+                    return;
                 }
-                controller.validateStage3();
-            } catch (ValidationException validationError) {
-                lastValidationError = validationError;
             }
+            boolean offThread = Phosphophyllite.CONFIG.multiblock.asyncValidation && controller.threadSafeValidation();
+            for (final var module : validatedMultiblockModules) {
+                // every module is prepared, even once one has declined, they may all be capturing state
+                offThread &= module.prepareValidation(offThread);
+            }
+            controller.journal(StructureJournal.Event.VALIDATION_STARTED, 0);
+            final var validation = new PendingValidation(offThread);
+            if (offThread) {
+                validation.finished = Queues.offThread.enqueue(validation);
+                pendingValidation = validation;
+                return;
+            }
+            validation.run();
+            finishValidation(validation);
+        }
+        
+        private void finishValidation(PendingValidation validation) {
+            if (validation.requests != validationRequests) {
+                // the structure changed while this was running, a newer validation is already scheduled
+                validatedMultiblockModules.forEach(IValidatedMultiblockControllerModule::validationDiscarded);
+                controller.journal(StructureJournal.Event.VALIDATION_DISCARDED, 0);
+                return;
+            }
+            if (validation.crash != null) {
+                throw validation.crash;
+            }
+            lastValidationError = validation.error;
+            for (final var module : validatedMultiblockModules) {
+                module.validationFinished(lastValidationError);
+            }
+            controller.journal(lastValidationError == null ? StructureJournal.Event.VALIDATION_PASSED : StructureJournal.Event.VALIDATION_FAILED, 0);
             transitionToState(lastValidationError == null ? IValidatedMultiblock.AssemblyState.ASSEMBLED : IValidatedMultiblock.AssemblyState.DISASSEMBLED);
         }
         
@@ -204,6 +369,7 @@ public interface IValidatedMultiblock<
             }
             controller.onStateTransition(oldAssemblyState, newAssemblyState);
             assemblyState = newAssemblyState;
+            controller.journal(StructureJournal.Event.STATE_TRANSITION, newAssemblyState.ordinal());
         }
         
         private final Long2ObjectLinkedOpenHashMap<BlockState> newStates = new Long2ObjectLinkedOpenHashMap<>();
@@ -231,7 +397,7 @@ public interface IValidatedMultiblock<
                 }
             }
             if (!newStates.isEmpty()) {
-                Util.setBlockStates(newStates, controller.level);
+                controller.levelAccess.setBlockStates(newStates);
             }
         }
         
@@ -256,14 +422,37 @@ public interface IValidatedMultiblock<
                 }
             }
             if (!newStates.isEmpty()) {
-                Util.setBlockStates(newStates, controller.level);
+                controller.levelAccess.setBlockStates(newStates);
             }
         }
         
         @Override
-        public void update() {
+        public void preUpdate() {
             updateAssemblyState();
-            
+        }
+        
+        @Override
+        public boolean structuralWorkPending() {
+            final var pending = pendingValidation;
+            if (pending != null) {
+                assert pending.finished != null;
+                return pending.finished.ready();
+            }
+            return updateAssemblyAtTick <= Phosphophyllite.tickNumber() && !controller.detachmentCheckPending();
+        }
+        
+        @Override
+        public boolean threadSafeUpdate() {
+            return controller.threadSafeTick();
+        }
+        
+        @Override
+        public boolean canSleep() {
+            return disassembledTickIsNoop && assemblyState == AssemblyState.DISASSEMBLED && updateAssemblyAtTick == Long.MAX_VALUE && pendingValidation == null;
+        }
+        
+        @Override
+        public void update() {
             for (final var tileTypeControllerTypeMultiblockControllerModule : validatedMultiblockModules) {
                 if (!tileTypeControllerTypeMultiblockControllerModule.canTick()) {
                     return;
@@ -281,12 +470,23 @@ public interface IValidatedMultiblock<
             }
         }
         
+        @Override
+        public Summary snapshotSummary() {
+            if (summary.assemblyState() != assemblyState || summary.lastValidationError() != lastValidationError) {
+                summary = new Summary(assemblyState, lastValidationError);
+            }
+            return summary;
+        }
+        
         @Nullable
         @Override
         public DebugInfo getDebugInfo() {
             final var debugInfo = new DebugInfo("ValidatedMultiblock");
             debugInfo.add("AssemblyState: " + assemblyState);
             debugInfo.add("LastValidationError: " + lastValidationError);
+            if (pendingValidation != null) {
+                debugInfo.add("ValidationPending");
+            }
             return debugInfo;
         }
     }
@@ -3,6 +3,8 @@ package net.roguelogix.phosphophyllite.multiblock.validated;
 import net.roguelogix.phosphophyllite.multiblock.ValidationException;
 import net.roguelogix.phosphophyllite.util.NonnullDefault;
 
+import javax.annotation.Nullable;
+
 @NonnullDefault
 public interface IValidatedMultiblockControllerModule {
     
@@ -28,6 +30,43 @@ public interface IValidatedMultiblockControllerModule {
         return true;
     }
     
+    /**
+     * Called on the updating thread right before the validation stages, which may then run on a worker thread, see {@link IValidatedMultiblock#threadSafeValidation()}
+     * Anything the stages need from the controller or level is copied here, off thread stages must not touch either
+     *
+     * @param offThread: if the stages may run off thread, if not they run right after this on the same thread, and nothing has to be copied
+     * @return false if this module's stages can't run off thread this time, the multiblock is then validated inline
+     */
+    default boolean prepareValidation(boolean offThread) {
+        return true;
+    }
+    
+    /**
+     * Called on the updating thread with the result of the validation stages, before the state transition
+     * Not called for validations that were skipped or discarded
+     *
+     * @param error: what failed validation, null if every stage of every module passed
+     */
+    default void validationFinished(@Nullable ValidationException error) {
+    }
+    
+    /**
+     * An off thread validation finished after the structure changed, its result is thrown away and a new validation is already scheduled
+     */
+    default void validationDiscarded() {
+    }
+    
+    /**
+     * Asked right before validating, once every module can validate
+     * The first module with an answer wins, the multiblock transitions straight to that state and the validation stages are skipped
+     *
+     * @return the state the multiblock is already known to be in, null to validate as normal
+     */
+    @Nullable
+    default IValidatedMultiblock.AssemblyState knownAssemblyState() {
+        return null;
+    }
+    
     default boolean canTick(){
         return true;
     }
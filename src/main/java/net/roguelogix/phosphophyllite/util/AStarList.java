@@ -8,8 +8,12 @@ import java.util.Objects;
 import java.util.TreeSet;
 import java.util.function.Function;
 
+/**
+ * Heads for one target at a time, multiblocks now search out from every cut at once in their neighbor graph instead
+ */
 @ParametersAreNonnullByDefault
 @MethodsReturnNonnullByDefault
+@Deprecated(forRemoval = true)
 public class AStarList<TileType> {
     
     TreeSet<TileType> targets = new TreeSet<>(this::orderingFunction);
@@ -0,0 +1,73 @@
+package net.roguelogix.phosphophyllite.util;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import net.minecraft.core.BlockPos;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Single hash map keyed by {@link BlockPos#asLong}, no per-section overhead so it's fine for sparse or tiny sets
+ */
+@NonnullDefault
+public final class HashPositionIndex implements PositionIndex {
+    
+    private final Long2IntOpenHashMap indexMap = new Long2IntOpenHashMap();
+    
+    {
+        indexMap.defaultReturnValue(-1);
+    }
+    
+    @Override
+    public int get(int x, int y, int z) {
+        return indexMap.get(BlockPos.asLong(x, y, z));
+    }
+    
+    @Override
+    public int put(int x, int y, int z, int index) {
+        return indexMap.put(BlockPos.asLong(x, y, z), index);
+    }
+    
+    @Override
+    public int remove(int x, int y, int z) {
+        return indexMap.remove(BlockPos.asLong(x, y, z));
+    }
+    
+    @Override
+    public void forEachInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, IntConsumer consumer) {
+        final long volume = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+        if (volume > indexMap.size()) {
+            // cheaper to filter everything than to probe every position in the box
+            for (final Long2IntMap.Entry entry : indexMap.long2IntEntrySet()) {
+                final long pos = entry.getLongKey();
+                final int x = BlockPos.getX(pos);
+                final int y = BlockPos.getY(pos);
+                final int z = BlockPos.getZ(pos);
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ) {
+                    consumer.accept(entry.getIntValue());
+                }
+            }
+            return;
+        }
+        for (int y = minY; y <= maxY; y++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                for (int x = minX; x <= maxX; x++) {
+                    final int index = indexMap.get(BlockPos.asLong(x, y, z));
+                    if (index != -1) {
+                        consumer.accept(index);
+                    }
+                }
+            }
+        }
+    }
+    
+    @Override
+    public int size() {
+        return indexMap.size();
+    }
+    
+    @Override
+    public void clear() {
+        indexMap.clear();
+    }
+}
@@ -1,6 +1,5 @@
 package net.roguelogix.phosphophyllite.util;
 
-import it.unimi.dsi.fastutil.longs.Long2IntLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import net.minecraft.MethodsReturnNonnullByDefault;
@@ -13,6 +12,7 @@ import org.joml.Vector3ic;
 
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.List;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
@@ -24,23 +24,25 @@ public class ModuleMap<ModuleType extends TileModule<TileType>, TileType extends
     @SuppressWarnings("unchecked")
     private final ObjectArrayList<TileType> tiles = ObjectArrayList.wrap((TileType[]) new BlockEntity[0]);
     private final LongArrayList poses = new LongArrayList();
-    private final Long2IntLinkedOpenHashMap indexMap = new Long2IntLinkedOpenHashMap();
+    private final PositionIndex indexMap;
     
-    {
-        indexMap.defaultReturnValue(-1);
+    public ModuleMap(ModuleType[] moduleArray) {
+        this(moduleArray, new HashPositionIndex());
     }
     
-    public ModuleMap(ModuleType[] moduleArray) {
+    public ModuleMap(ModuleType[] moduleArray, PositionIndex indexMap) {
         modules = ObjectArrayList.wrap(moduleArray);
+        this.indexMap = indexMap;
     }
     
     public boolean addModule(final ModuleType module) {
         final TileType tile = module.iface;
-        final long posLong = tile.getBlockPos().asLong();
-        final int previousIndex = indexMap.put(posLong, modules.size());
+        final var pos = tile.getBlockPos();
+        final long posLong = pos.asLong();
+        final int previousIndex = indexMap.put(pos.getX(), pos.getY(), pos.getZ(), modules.size());
         // dont duplicate positions, just overwrite it
         if (previousIndex != -1) {
-            indexMap.put(posLong, previousIndex);
+            indexMap.put(pos.getX(), pos.getY(), pos.getZ(), previousIndex);
             final var oldModule = modules.set(previousIndex, module);
             tiles.set(previousIndex, tile);
             poses.set(previousIndex, posLong);
@@ -48,18 +50,32 @@ public class ModuleMap<ModuleType extends TileModule<TileType>, TileType extends
         }
         modules.add(module);
         tiles.add(tile);
-        poses.add(tile.getBlockPos().asLong());
+        poses.add(posLong);
         return true;
     }
     
     public void addAll(ModuleMap<ModuleType, TileType> otherMap) {
+        final int newSize = modules.size() + otherMap.size();
+        modules.ensureCapacity(newSize);
+        tiles.ensureCapacity(newSize);
+        poses.ensureCapacity(newSize);
         otherMap.forEachModule(this::addModule);
     }
     
+    public void addModules(List<ModuleType> toAdd) {
+        final int newSize = modules.size() + toAdd.size();
+        modules.ensureCapacity(newSize);
+        tiles.ensureCapacity(newSize);
+        poses.ensureCapacity(newSize);
+        for (int i = 0; i < toAdd.size(); i++) {
+            addModule(toAdd.get(i));
+        }
+    }
+    
     public boolean removeModule(final ModuleType module) {
         final TileType tile = module.iface;
-        final long posLong = tile.getBlockPos().asLong();
-        final int index = indexMap.remove(posLong);
+        final var pos = tile.getBlockPos();
+        final int index = indexMap.remove(pos.getX(), pos.getY(), pos.getZ());
         if (index == -1) {
             return false;
         }
@@ -68,7 +84,7 @@ public class ModuleMap<ModuleType extends TileModule<TileType>, TileType extends
         final var previousEndPos = poses.removeLong(poses.size() - 1);
         if (index != modules.size()) {
             // shuffle the end to our current position
-            indexMap.put(previousEndPos, index);
+            indexMap.put(BlockPos.getX(previousEndPos), BlockPos.getY(previousEndPos), BlockPos.getZ(previousEndPos), index);
             modules.set(index, previousEndModule);
             tiles.set(index, previousEndTile);
             poses.set(index, previousEndPos);
@@ -92,9 +108,22 @@ public class ModuleMap<ModuleType extends TileModule<TileType>, TileType extends
         return getModule(pos) != null;
     }
     
+    /**
+     * Index into the element arrays, -1 if nothing is at the position
+     * Indices are only stable until the next removal, the end element is swapped into the removed index
+     */
+    public int indexOf(int x, int y, int z) {
+        return indexMap.get(x, y, z);
+    }
+    
+    public int indexOf(ModuleType module) {
+        final var pos = module.iface.getBlockPos();
+        return indexMap.get(pos.getX(), pos.getY(), pos.getZ());
+    }
+    
     @Nullable
     public ModuleType getModule(int x, int y, int z) {
-        int index = indexMap.get(BlockPos.asLong(x, y, z));
+        int index = indexMap.get(x, y, z);
         if (index == -1) {
             return null;
         }
@@ -113,7 +142,7 @@ public class ModuleMap<ModuleType extends TileModule<TileType>, TileType extends
     
     @Nullable
     public TileType getTile(int x, int y, int z) {
-        int index = indexMap.get(BlockPos.asLong(x, y, z));
+        int index = indexMap.get(x, y, z);
         if (index == -1) {
             return null;
         }
@@ -175,6 +204,13 @@ public class ModuleMap<ModuleType extends TileModule<TileType>, TileType extends
         }
     }
     
+    /**
+     * Bounds are inclusive, no order is guaranteed
+     */
+    public void forEachModuleInBox(Vector3ic min, Vector3ic max, Consumer<ModuleType> consumer) {
+        indexMap.forEachInBox(min.x(), min.y(), min.z(), max.x(), max.y(), max.z(), index -> consumer.accept(modules.get(index)));
+    }
+    
     public void forEachPos(Consumer<BlockPos> consumer) {
         forEachModule((module) -> consumer.accept(module.iface.getBlockPos()));
     }
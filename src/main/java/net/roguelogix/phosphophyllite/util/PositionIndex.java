@@ -0,0 +1,32 @@
+package net.roguelogix.phosphophyllite.util;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Maps block positions to int indices, -1 is used for positions that aren't in the index
+ */
+@NonnullDefault
+public interface PositionIndex {
+    
+    int get(int x, int y, int z);
+    
+    /**
+     * @return the previous index at the position, -1 if there wasn't one
+     */
+    int put(int x, int y, int z, int index);
+    
+    /**
+     * @return the index that was at the position, -1 if there wasn't one
+     */
+    int remove(int x, int y, int z);
+    
+    /**
+     * Calls the consumer with the index of every position inside of the box, bounds are inclusive
+     * No order is guaranteed
+     */
+    void forEachInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, IntConsumer consumer);
+    
+    int size();
+    
+    void clear();
+}
@@ -0,0 +1,181 @@
+package net.roguelogix.phosphophyllite.util;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import javax.annotation.Nullable;
+import java.util.function.IntConsumer;
+
+/**
+ * Buckets positions by 16^3 section, each section is a dense slot array with an occupancy bitset
+ * <p>
+ * A lookup is one hash probe for the section, skipped entirely when it lands in the same section as the last one, and then an array offset
+ * Box queries walk the occupancy bits of the sections the box covers instead of probing every position
+ * Costs ~16KiB per occupied section, so it's meant for dense sets like multiblocks
+ */
+@NonnullDefault
+public final class SectionPositionIndex implements PositionIndex {
+    
+    private static final class Section {
+        private final long key;
+        private final int baseX;
+        private final int baseY;
+        private final int baseZ;
+        // index + 1, so a fresh array is empty
+        private final int[] slots = new int[4096];
+        private final long[] occupancy = new long[64];
+        private int count;
+        
+        private Section(long key, int sectionX, int sectionY, int sectionZ) {
+            this.key = key;
+            this.baseX = sectionX << 4;
+            this.baseY = sectionY << 4;
+            this.baseZ = sectionZ << 4;
+        }
+    }
+    
+    private final Long2ObjectOpenHashMap<Section> sections = new Long2ObjectOpenHashMap<>();
+    // single reference so racing readers can't see a mismatched key and section
+    @Nullable
+    private Section lastSection;
+    private int size;
+    
+    // same packing as SectionPos.asLong
+    private static long sectionKey(int sectionX, int sectionY, int sectionZ) {
+        return ((long) sectionX & 0x3FFFFFL) << 42 | ((long) sectionY & 0xFFFFFL) | ((long) sectionZ & 0x3FFFFFL) << 20;
+    }
+    
+    private static int localIndex(int x, int y, int z) {
+        return (x & 15) | (z & 15) << 4 | (y & 15) << 8;
+    }
+    
+    @Nullable
+    private Section section(int sectionX, int sectionY, int sectionZ) {
+        final long key = sectionKey(sectionX, sectionY, sectionZ);
+        final var last = lastSection;
+        if (last != null && last.key == key) {
+            return last;
+        }
+        final var section = sections.get(key);
+        if (section != null) {
+            lastSection = section;
+        }
+        return section;
+    }
+    
+    @Override
+    public int get(int x, int y, int z) {
+        final var section = section(x >> 4, y >> 4, z >> 4);
+        if (section == null) {
+            return -1;
+        }
+        return section.slots[localIndex(x, y, z)] - 1;
+    }
+    
+    @Override
+    public int put(int x, int y, int z, int index) {
+        var section = section(x >> 4, y >> 4, z >> 4);
+        if (section == null) {
+            section = new Section(sectionKey(x >> 4, y >> 4, z >> 4), x >> 4, y >> 4, z >> 4);
+            sections.put(section.key, section);
+            lastSection = section;
+        }
+        final int local = localIndex(x, y, z);
+        final int previous = section.slots[local] - 1;
+        section.slots[local] = index + 1;
+        if (previous == -1) {
+            section.occupancy[local >> 6] |= 1L << local;
+            section.count++;
+            size++;
+        }
+        return previous;
+    }
+    
+    @Override
+    public int remove(int x, int y, int z) {
+        final var section = section(x >> 4, y >> 4, z >> 4);
+        if (section == null) {
+            return -1;
+        }
+        final int local = localIndex(x, y, z);
+        final int previous = section.slots[local] - 1;
+        if (previous == -1) {
+            return -1;
+        }
+        section.slots[local] = 0;
+        section.occupancy[local >> 6] &= ~(1L << local);
+        size--;
+        if (--section.count == 0) {
+            sections.remove(section.key);
+            if (lastSection == section) {
+                lastSection = null;
+            }
+        }
+        return previous;
+    }
+    
+    @Override
+    public void forEachInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, IntConsumer consumer) {
+        if (minX > maxX || minY > maxY || minZ > maxZ) {
+            return;
+        }
+        final int minSectionX = minX >> 4, minSectionY = minY >> 4, minSectionZ = minZ >> 4;
+        final int maxSectionX = maxX >> 4, maxSectionY = maxY >> 4, maxSectionZ = maxZ >> 4;
+        final long sectionVolume = (long) (maxSectionX - minSectionX + 1) * (maxSectionY - minSectionY + 1) * (maxSectionZ - minSectionZ + 1);
+        if (sectionVolume > sections.size()) {
+            // box covers more sections than exist, filter the existing ones instead
+            for (final var section : sections.values()) {
+                final int sectionX = section.baseX >> 4, sectionY = section.baseY >> 4, sectionZ = section.baseZ >> 4;
+                if (sectionX >= minSectionX && sectionX <= maxSectionX && sectionY >= minSectionY && sectionY <= maxSectionY && sectionZ >= minSectionZ && sectionZ <= maxSectionZ) {
+                    forEachInSection(section, minX, minY, minZ, maxX, maxY, maxZ, consumer);
+                }
+            }
+            return;
+        }
+        for (int sectionY = minSectionY; sectionY <= maxSectionY; sectionY++) {
+            for (int sectionZ = minSectionZ; sectionZ <= maxSectionZ; sectionZ++) {
+                for (int sectionX = minSectionX; sectionX <= maxSectionX; sectionX++) {
+                    final var section = sections.get(sectionKey(sectionX, sectionY, sectionZ));
+                    if (section != null) {
+                        forEachInSection(section, minX, minY, minZ, maxX, maxY, maxZ, consumer);
+                    }
+                }
+            }
+        }
+    }
+    
+    private static void forEachInSection(Section section, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, IntConsumer consumer) {
+        final boolean contained = section.baseX >= minX && section.baseX + 15 <= maxX &&
+                section.baseY >= minY && section.baseY + 15 <= maxY &&
+                section.baseZ >= minZ && section.baseZ + 15 <= maxZ;
+        final var slots = section.slots;
+        final var occupancy = section.occupancy;
+        for (int word = 0; word < 64; word++) {
+            long bits = occupancy[word];
+            while (bits != 0) {
+                final int local = (word << 6) | Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (!contained) {
+                    final int x = section.baseX + (local & 15);
+                    final int z = section.baseZ + ((local >> 4) & 15);
+                    final int y = section.baseY + (local >> 8);
+                    if (x < minX || x > maxX || y < minY || y > maxY || z < minZ || z > maxZ) {
+                        continue;
+                    }
+                }
+                consumer.accept(slots[local] - 1);
+            }
+        }
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public void clear() {
+        sections.clear();
+        lastSection = null;
+        size = 0;
+    }
+}
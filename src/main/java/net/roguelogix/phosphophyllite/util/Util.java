@@ -133,7 +133,7 @@ public class Util {
                 LevelChunk chunk = (LevelChunk) world.getChunk(chunkX, chunkZ, ChunkStatus.FULL, false);
                 if (chunk == null) {
                     for (int x = sectionMinX; x < sectionMaxX; x++) {
-                        for (int y = miny; y < maxy; y++) {
+                        for (int y = miny; y <= maxy; y++) {
                             for (int z = sectionMinZ; z < sectionMaxZ; z++) {
                                 scratchVector.set(x, y, z);
                                 func.accept(AIR_STATE, scratchVector);